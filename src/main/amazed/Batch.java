@@ -0,0 +1,156 @@
+package amazed;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import amazed.maze.Amazed;
+
+/**
+ * <code>Batch</code> solves many maps in the same JVM, and reports
+ * throughput and latency statistics.
+ * <p>
+ * All mazes are solved on a single shared <code>ForkJoinPool</code>.
+ * At most <code>maxInFlight</code> mazes are loaded or being solved at
+ * any time: each of them is driven by one of as many driver threads,
+ * which loads a map, submits its solver to the shared pool, and waits
+ * for the result before moving on to the next map. Maps can be
+ * scheduled in decreasing order of file size, so that the largest
+ * mazes do not end up running alone at the end of the batch.
+ * <p>
+ * The latency of a maze is the time from the start of loading its map
+ * to the end of its search. Maps that cannot be loaded or solved,
+ * including those that run out of memory, are reported as failed,
+ * and count neither in throughput nor in latency.
+ */
+
+public class Batch
+{
+    private final List<File> maps;
+    private final String solver;
+    private final int maxInFlight;
+    private boolean checkReachability = false;
+
+    /**
+     * Creates a batch of maps to be solved.
+     *
+     * @param maps          names of map files, or of directories whose
+     *                      <code>.map</code> files are all solved
+     * @param solver        the specification of the solver of every map,
+     *                      as in {@link Amazed#Amazed(String, String, int)}
+     * @param maxInFlight   the maximum number of mazes loaded or being
+     *                      solved at the same time
+     * @param bigFirst      if <code>true</code>, maps are solved in decreasing
+     *                      order of file size; otherwise, in the given order
+     */
+    public Batch(List<String> maps, String solver, int maxInFlight, boolean bigFirst)
+    {
+        this.maps = new ArrayList<>();
+        for (String name: maps) {
+            File file = new File(name);
+            File[] files = file.listFiles((dir, child) -> child.endsWith(".map"));
+            if (files == null) {
+                this.maps.add(file);
+            } else {
+                Arrays.sort(files);
+                this.maps.addAll(Arrays.asList(files));
+            }
+        }
+        if (bigFirst)
+            this.maps.sort((a, b) -> Long.compare(b.length(), a.length()));
+        this.solver = solver;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Sets whether every maze is first checked for a reachable goal,
+     * as in {@link Amazed#setReachabilityCheck(boolean)}; worthwhile
+     * when many maps of the batch are expected to have no solution.
+     *
+     * @param checkReachability   <code>true</code> to check reachability
+     *                            before solving every maze
+     */
+    public void setReachabilityCheck(boolean checkReachability)
+    {
+        this.checkReachability = checkReachability;
+    }
+
+    /**
+     * Solves all maps in the batch, waits for termination, and prints
+     * to screen throughput and latency statistics.
+     *
+     * @param pool   the pool shared by the solvers of all maps
+     */
+    public void run(ForkJoinPool pool)
+        throws InterruptedException
+    {
+        int count = maps.size();
+        // map --> latency; -1 if the map failed or was never attempted
+        long[] latencies = new long[count];
+        Arrays.fill(latencies, -1);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger solved = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService drivers = Executors.newFixedThreadPool(Math.min(maxInFlight, Math.max(1, count)));
+        long start = System.nanoTime();
+        for (int d = 0; d < maxInFlight; d++) {
+            drivers.execute(() -> {
+                int k;
+                while ((k = next.getAndIncrement()) < count) {
+                    long begin = System.nanoTime();
+                    try {
+                        Amazed amazed = new Amazed(maps.get(k).getPath(), solver, -1);
+                        amazed.setReachabilityCheck(checkReachability);
+                        if (amazed.search(pool) != null)
+                            solved.incrementAndGet();
+                        latencies[k] = System.nanoTime() - begin;
+                        completed.incrementAndGet();
+                    } catch (Throwable e) {
+                        failed.incrementAndGet();
+                        System.err.println(maps.get(k) + ": " + e);
+                        // a map too large for memory or for the stack
+                        // fails alone; other errors stop this driver
+                        if (e instanceof Error
+                                && !(e instanceof OutOfMemoryError || e instanceof StackOverflowError))
+                            throw (Error) e;
+                    }
+                }
+            });
+        }
+        drivers.shutdown();
+        drivers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        int done = completed.get();
+        int skipped = count - done - failed.get();
+        // maps without a latency sort first
+        Arrays.sort(latencies);
+        long[] doneLatencies = Arrays.copyOfRange(latencies, count - done, count);
+        double seconds = elapsed / 1e9;
+        System.out.printf("Solved %d mazes (%d with a goal) in %.3f s: %.1f mazes/s%n",
+                          done, solved.get(), seconds, done / seconds);
+        if (failed.get() > 0)
+            System.out.println(failed.get() + " mazes could not be solved");
+        if (skipped > 0)
+            System.out.println(skipped + " mazes were not attempted");
+        if (done > 0)
+            System.out.printf("Latency (ms): p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                              percentile(doneLatencies, 50), percentile(doneLatencies, 90),
+                              percentile(doneLatencies, 99), doneLatencies[done - 1] / 1e6);
+    }
+
+    // nearest-rank percentile of sorted nanosecond latencies, in milliseconds
+    private static double percentile(long[] sorted, int percent)
+    {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
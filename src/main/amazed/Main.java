@@ -1,8 +1,17 @@
 package amazed;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import amazed.maze.Amazed;
+import amazed.maze.CompiledMap;
+import amazed.maze.PagedMaze;
+import amazed.solver.SolverFactory;
+import amazed.solver.SolverSpec;
 
 
 public class Main
@@ -10,47 +19,115 @@ public class Main
     private static void printUsageAndExit()
     {
         String className = MethodHandles.lookup().lookupClass().getName();
+        StringBuilder solvers = new StringBuilder();
+        for (SolverFactory factory: SolverSpec.factories().values())
+            solvers.append(String.format("   %-14s %s%n", factory.name(), factory.description()));
         System.out.println("A-mazed: finds and displays paths to goal in a maze.\n"
                            + "\n"
                            + "usage: java " + className + " MAP [SOLVER] [PERIOD]\n"
+                           + "       java " + className + " batch [-solver SOLVER] [-in-flight N] [-big-first] [-reachable] MAP...\n"
+                           + "       java " + className + " compile [-seed N | -paged] MAP OUT\n"
                            + "\n"
-                           + " MAP    filename with map file\n"
-                           + " SOLVER 'sequential' or 'parallel-N' solver, forking after N steps\n"
-                           + " PERIOD time in millisecond between steps (0: don't animate)");
+                           + " MAP    filename with map file (batch: or directory of .map files)\n"
+                           + " SOLVER NAME[:KEY=VALUE,...], or 'parallel-N' for 'parallel:forkAfter=N';\n"
+                           + "        parameter threads=N runs the solver on a pool of N threads\n"
+                           + " PERIOD time in millisecond between steps (0: don't animate)\n"
+                           + "\n"
+                           + " batch      solve all maps on a shared pool, without display\n"
+                           + " -in-flight maximum number of mazes solved at the same time\n"
+                           + " -big-first solve larger map files first\n"
+                           + " -reachable skip mazes without reachable goals, after a linear-time check\n"
+                           + "\n"
+                           + " compile    write the binary form of text map MAP to OUT\n"
+                           + " -seed      seed of the node identifiers (0: random at every load)\n"
+                           + " -paged     write a paged map, loaded on demand while searching\n"
+                           + "\n"
+                           + "available solvers:\n"
+                           + solvers);
         System.exit(0);
     }
 
-    private final static String SEQUENTIAL = "sequential";
-    private final static String PARALLEL = "parallel";
+    private final static String BATCH = "batch";
+    private final static String COMPILE = "compile";
 
     private static String map;
-    private static boolean sequential = true;
-    private static int forkAfter = 0;
+    private static String solver = "sequential";
     private static int period = 500;
+    private static boolean batch = false;
+    private static List<String> maps = new ArrayList<>();
+    private static int inFlight = Runtime.getRuntime().availableProcessors();
+    private static boolean bigFirst = false;
+    private static boolean checkReachable = false;
+    private static String compiled;
+    private static long idSeed = 0;
+    private static boolean paged = false;
+
+    private static void parseSolver(String spec)
+    {
+        try {
+            if (!SolverSpec.factories().containsKey(SolverSpec.parse(spec).name()))
+                printUsageAndExit();
+        } catch (IllegalArgumentException e) {
+            printUsageAndExit();
+        }
+        solver = spec;
+    }
+
+    private static void parseBatchArguments(String[] args)
+    {
+        batch = true;
+        for (int k = 1; k < args.length; k++) {
+            if (args[k].equals("-solver") && k + 1 < args.length)
+                parseSolver(args[++k]);
+            else if (args[k].equals("-in-flight") && k + 1 < args.length) {
+                try {
+                    inFlight = Integer.parseInt(args[++k]);
+                } catch (NumberFormatException e) {
+                    printUsageAndExit();
+                }
+            } else if (args[k].equals("-big-first"))
+                bigFirst = true;
+            else if (args[k].equals("-reachable"))
+                checkReachable = true;
+            else if (args[k].startsWith("-"))
+                printUsageAndExit();
+            else
+                maps.add(args[k]);
+        }
+        if (maps.isEmpty() || inFlight < 1)
+            printUsageAndExit();
+    }
+
+    private static void parseCompileArguments(String[] args)
+    {
+        int k = 1;
+        if (k + 1 < args.length && args[k].equals("-seed")) {
+            try {
+                idSeed = Long.parseLong(args[k + 1]);
+            } catch (NumberFormatException e) {
+                printUsageAndExit();
+            }
+            k += 2;
+        } else if (k < args.length && args[k].equals("-paged")) {
+            paged = true;
+            k += 1;
+        }
+        if (args.length != k + 2)
+            printUsageAndExit();
+        map = args[k];
+        compiled = args[k + 1];
+    }
 
     private static void parseArguments(String[] args)
     {
-        if (args.length >= 1) {
+        if (args.length >= 1 && args[0].equals(BATCH))
+            parseBatchArguments(args);
+        else if (args.length >= 1 && args[0].equals(COMPILE))
+            parseCompileArguments(args);
+        else if (args.length >= 1) {
             map = args[0];
             if (args.length >= 2) {
-                String solver = args[1];
-                if (solver.equals(SEQUENTIAL))
-                    sequential = true;
-                else {
-                    sequential = false;
-                    String[] splitSolver = solver.split("-");
-                    if (splitSolver.length == 2) {
-                        if (splitSolver[0].equals(PARALLEL)) {
-                            try {
-                                forkAfter = Integer.parseInt(splitSolver[1]);
-                            } catch (NumberFormatException e) {
-                                printUsageAndExit();
-                            }
-                        } else
-                            printUsageAndExit();
-                    } else
-                        printUsageAndExit();
-                }
+                parseSolver(args[1]);
                 if (args.length >= 3) {
                     try {
                         period = Integer.parseInt(args[2]);
@@ -67,7 +144,39 @@ public class Main
     throws InterruptedException
     {
         parseArguments(args);
-        Amazed amazed = new Amazed(map, sequential, forkAfter, period);
+        if (batch) {
+            int threads = 0;
+            try {
+                threads = SolverSpec.parse(solver).threads();
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            }
+            ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+            Batch runs = new Batch(maps, solver, inFlight, bigFirst);
+            runs.setReachabilityCheck(checkReachable);
+            runs.run(pool);
+            return;
+        }
+        if (compiled != null) {
+            try {
+                if (paged)
+                    PagedMaze.convert(map, compiled);
+                else
+                    CompiledMap.compile(map, compiled, idSeed);
+            } catch (IOException e) {
+                System.err.println("Error: cannot compile map file " + map + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        Amazed amazed = null;
+        try {
+            amazed = new Amazed(map, solver, period);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
         long start = System.currentTimeMillis();
         amazed.solve();
         long stop = System.currentTimeMillis();
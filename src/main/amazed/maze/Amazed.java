@@ -1,27 +1,34 @@
 package amazed.maze;
 
 import java.awt.EventQueue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.concurrent.RecursiveTask;
 
-import amazed.solver.SequentialSolver;
-import amazed.solver.ForkJoinSolver;
+import amazed.solver.BreadthFirstSolver;
+import amazed.solver.MultiGoalSolver;
+import amazed.solver.SolverSpec;
 
 /**
  * <code>Amazed</code> is a simple application class that applies a
  * solver to a maze.
  * <p>
- * This class supports sequential solvers of class
- * <code>SequentialSolver</code> and fork/join solvers of class
- * <code>ForkJoinSolver</code>. It runs both using the common pool of
- * <code>java.util.concurrent.ForkJoinPool</code>; thus, the solvers
- * must be a subtype of
- * <code>RecursiveTask&lt;List&lt;Integer&gt;&gt;</code>. After creating an
- * instance from a map file, the solving process is started by calling
- * method <code>solve</code>. After <code>solve</code> terminates, the
- * solution can be displayed by calling method
- * <code>showSolution</code>.
+ * This class supports any solver provided by a
+ * <code>SolverFactory</code>, selected by a <code>SolverSpec</code>
+ * such as <code>sequential</code>, <code>parallel-3</code>, or
+ * <code>bfs:threads=8</code>. It runs solvers using the common pool of
+ * <code>java.util.concurrent.ForkJoinPool</code>, or a pool of its own
+ * if the specification has parameter <code>threads</code>, created
+ * for every search and shut down at its end; thus, the solvers must
+ * be a subtype of <code>RecursiveTask&lt;List&lt;Integer&gt;&gt;</code>.
+ * After creating an instance from a map file, the solving process is
+ * started by calling method <code>solve</code>. After
+ * <code>solve</code> terminates, the solution can be displayed by
+ * calling method <code>showSolution</code>.
  *
  * @author  Carlo A. Furia
  */
@@ -30,7 +37,13 @@ public class Amazed
 {
     private Maze maze;
     private RecursiveTask<List<Integer>> solver;
+    // threads of the pool of solve, solveNearest, and solveAll;
+    // 0 for the common pool
+    private int threads;
     private List<Integer> path;
+    private Map<Integer, List<Integer>> paths;
+    // check that a goal is reachable before running the solver?
+    private boolean checkReachability = false;
 
     /**
      * Creates a maze reading from map file <code>map</code>.
@@ -55,7 +68,42 @@ public class Amazed
      */
     public Amazed(String map, boolean sequentialSolver, int forkAfter, int animationDelay)
     {
-        maze = new Maze(map);
+        this(map, sequentialSolver ? "sequential" : "parallel:forkAfter=" + forkAfter, animationDelay);
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>, to be
+     * searched by the solver specified by <code>solver</code>.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param solver           the specification of the solver, as parsed by
+     *                         {@link amazed.solver.SolverSpec#parse(String)}
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation of the
+     *                         solution search, as in
+     *                         {@link #Amazed(String, boolean, int, int)}
+     * @throws IllegalArgumentException   if <code>solver</code> is malformed,
+     *                                    or does not specify an available
+     *                                    solver
+     * @throws UncheckedIOException       if <code>map</code> cannot be read
+     */
+    public Amazed(String map, String solver, int animationDelay)
+    {
+        SolverSpec spec = SolverSpec.parse(solver);
+        threads = spec.threads();
+        boolean paged = PagedMaze.isPaged(map);
+        if (paged) {
+            try {
+                maze = new PagedMaze(map, PagedMaze.DEFAULT_CACHED_PAGES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot open map file " + map, e);
+            }
+        } else
+            maze = new Maze(map);
+        this.solver = spec.create(maze);
+        // paged mazes are not displayed
+        if (paged)
+            animationDelay = -1;
         if (animationDelay >= 0) {
             EventQueue.invokeLater(new Runnable() {
                 @Override
@@ -66,10 +114,20 @@ public class Amazed
             });
         }
         maze.setDelay(animationDelay);
-        if (sequentialSolver)
-            solver = new SequentialSolver(maze);
-        else
-            solver = new ForkJoinSolver(maze, forkAfter);
+    }
+
+    // applies `action' to a pool of `threads' threads, created for the
+    // occasion and shut down afterwards, or else to the common pool
+    private <T> T withPool(Function<ForkJoinPool, T> action)
+    {
+        if (threads <= 0)
+            return action.apply(ForkJoinPool.commonPool());
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return action.apply(pool);
+        } finally {
+            pool.shutdown();
+        }
     }
 
     /**
@@ -78,25 +136,111 @@ public class Amazed
      */
     public void solve()
     {
-        ForkJoinPool pool = ForkJoinPool.commonPool();
+        if (withPool(this::search) != null)
+            System.out.println("Goal found :-D");
+        else
+            System.out.println("Search completed: no goal found :-(");
+    }
+
+    /**
+     * Sets whether a search first checks that some goal can be reached
+     * from the start node, and skips running the solver if none can.
+     * The check builds an index of the connected components of the
+     * maze, in time linear in the size of the maze, which pays off only
+     * when many searches are unsuccessful; it is off by default. Paged
+     * mazes are never checked.
+     *
+     * @param checkReachability   <code>true</code> to check reachability
+     *                            before searching
+     */
+    public void setReachabilityCheck(boolean checkReachability)
+    {
+        this.checkReachability = checkReachability;
+    }
+
+    /**
+     * Runs the solver on the maze in a given pool, and waits for
+     * termination, without printing anything. Several objects can
+     * search their mazes in the same pool at the same time. If
+     * reachability is checked (see <code>setReachabilityCheck</code>)
+     * and no goal can be reached from the start node, the solver is
+     * not run at all.
+     *
+     * @param pool   the pool running the solver
+     * @return       the path found by the solver if it is valid;
+     *               <code>null</code> otherwise
+     */
+    public List<Integer> search(ForkJoinPool pool)
+    {
+        paths = null;
+        // paged mazes are too large for an index of their components
+        if (checkReachability && !(maze instanceof PagedMaze) && !maze.reachesGoal(maze.start())) {
+            path = null;
+            return null;
+        }
         path = pool.invoke(solver);
+        if (path != null && !maze.isValidPath(path))
+            path = null;
+        return path;
+    }
+
+    /**
+     * Searches the maze for a path to the goal nearest to the start
+     * node, using <code>BreadthFirstSolver</code> regardless of the
+     * solver chosen when creating this object; waits for termination,
+     * and prints to screen the outcome of the search.
+     *
+     * @return   a shortest path from the start node to a goal;
+     *           <code>null</code> if no goal is reachable
+     */
+    public List<Integer> solveNearest()
+    {
+        path = withPool(pool -> pool.invoke(new BreadthFirstSolver(maze)));
+        paths = null;
         if (path != null && maze.isValidPath(path))
-            System.out.println("Goal found :-D");
+            System.out.println("Nearest goal found at " + (path.size() - 1) + " steps :-D");
         else
             System.out.println("Search completed: no goal found :-(");
-        pool.shutdown();
+        return path;
+    }
+
+    /**
+     * Searches the maze for paths to all goals reachable from the
+     * start node, in a single exploration using
+     * <code>MultiGoalSolver</code> regardless of the solver chosen
+     * when creating this object; waits for termination, and prints to
+     * screen the outcome of the search.
+     *
+     * @return   a map from the identifier of every reachable goal to a
+     *           shortest path from the start node to it, ordered by
+     *           increasing path length
+     */
+    public Map<Integer, List<Integer>> solveAll()
+    {
+        MultiGoalSolver multiSolver = new MultiGoalSolver(maze);
+        path = withPool(pool -> pool.invoke(multiSolver));
+        paths = multiSolver.paths();
+        if (paths.isEmpty())
+            System.out.println("Search completed: no goal found :-(");
+        else
+            System.out.println(paths.size() + " of " + maze.goals().length + " goals found :-D");
+        return paths;
     }
 
     /**
      * Displays the solution by removing all players and marking a
      * path from the start node to a goal on the maze graphical
-     * representation. The method only removes the players if no
+     * representation &mdash; or paths to all goals, after
+     * <code>solveAll</code>. The method only removes the players if no
      * solution has been found.
      */
     public void showSolution()
     {
         maze.removePlayers();
-        if (path != null) {
+        if (paths != null) {
+            for (List<Integer> goalPath: paths.values())
+                maze.markPath(goalPath);
+        } else if (path != null) {
             maze.markPath(path);
         }
     }
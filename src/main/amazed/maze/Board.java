@@ -1,14 +1,14 @@
 package amazed.maze;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.io.*;
 
@@ -16,71 +16,244 @@ import java.io.*;
 public class Board
 {
 
-    // after creation, read-only access (except for operation markPath)
-    private Cell[][] board;
+    // all tiles, by ordinal
+    private static final Tile[] TILES = Tile.values();
+
+    // dense index --> ordinal of the tile of the cell; dense indices
+    // are row-major, row*nCols + col
+    // after creation, read-only access (except for operations markPath
+    // and setTile)
+    private byte[] tiles;
+    // dense index --> unique node id
+    // after creation, read-only access
+    private int[] ids;
     private int nRows;
     private int nCols;
 
+    // dense index --> open directions of the cell: bit 1 << d.ordinal()
+    // is set if the neighbor in direction d is on the board and accessible
+    // kept up to date by markPath and setTile
+    private final byte[] openDirections;
+    // direction ordinal --> offset of the dense index of the neighbor
+    private final int[] offsets;
+
     // players currently on the board
     // player identifier --> player object
     private final Map<Integer, Player> players;
+    // dense index --> players in the cell; only occupied cells have an entry
+    private final Map<Integer, Queue<Player>> occupants = new ConcurrentHashMap<>();
     // count of number of registered players, to ensure unique player ids
     private final AtomicInteger nPlayers = new AtomicInteger();
 
-    // unique node id --> coordinate position of node on board
+    // node id + ids.length --> dense index of the node; -1 for the ids
+    // in -ids.length .. ids.length - 1 that no cell has
     // after creation, read-only access
-    private Map<Integer, Position> idToCell;
+    private final int[] indices;
+
+    // dense indices of the cells with a heart, in row-major order
+    // after creation, read-only access
+    private final List<Integer> hearts;
+
+    // dense index --> Manhattan distance to the nearest heart
+    // computed on first use, then read-only access
+    private volatile int[] heartDistances;
 
-    // empty board
-    Board(int nRows, int nCols)
+    // number of cells opened or closed since creation
+    private volatile int revision;
+
+    // board without players, with given tiles, node ids, and hearts;
+    // node ids must be distinct, in -nRows*nCols .. nRows*nCols - 1
+    Board(int nRows, int nCols, byte[] tiles, int[] ids, List<Integer> hearts)
     {
-        board = new Cell[nRows][nCols];
+        this(nRows, nCols, tiles, ids, invert(ids), hearts);
+    }
+
+    // board sharing node ids, and their inverse `indices', with another board
+    private Board(int nRows, int nCols, byte[] tiles, int[] ids, int[] indices, List<Integer> hearts)
+    {
+        this.tiles = tiles;
+        this.ids = ids;
         this.nRows = nRows;
         this.nCols = nCols;
         players = new ConcurrentHashMap<>();
-        idToCell = new HashMap<>();
+        this.indices = indices;
+        this.hearts = hearts;
+        offsets = new int[] { -nCols, nCols, -1, 1 };
+        openDirections = new byte[nRows*nCols];
+        for (int index = 0; index < openDirections.length; index++)
+            openDirections[index] = computeOpenDirections(index);
+    }
+
+    // inverse of the permutation `ids', offset by ids.length
+    private static int[] invert(int[] ids)
+    {
+        int[] indices = new int[2*ids.length];
+        Arrays.fill(indices, -1);
+        for (int index = 0; index < ids.length; index++)
+            indices[ids[index] + ids.length] = index;
+        return indices;
     }
 
     // board from map `filename'
-    Board(String filename)
+    // throws UncheckedIOException if the map cannot be read
+    static Board fromMap(String filename)
     {
         try {
-            readMap(filename);
+            if (CompiledMap.isCompiled(filename))
+                return CompiledMap.read(filename);
+            return CompiledMap.readCached(filename);
         } catch (IOException e) {
-            System.err.println("Error: cannot open map file " + filename);
-            System.exit(1);
+            throw new UncheckedIOException("cannot open map file " + filename, e);
         }
-        players = new ConcurrentHashMap<>();
     }
 
+    // snapshot of the cell at row, col, for rendering
     Cell getCell(int row, int col)
     {
-        return board[row][col];
+        int index = row*nCols + col;
+        Tile tile = getTile(index);
+        Queue<Player> cellPlayers = occupants.get(index);
+        if (cellPlayers == null || !tile.isAccessible())
+            return new Cell(tile, ids[index]);
+        return new Cell(tile, ids[index], cellPlayers.toArray(new Player[0]));
+    }
+
+    Tile getTile(int index)
+    {
+        return TILES[tiles[index]];
     }
 
-    Cell getCell(Position position)
+    // is the cell with dense index `index' accessible?
+    boolean isAccessible(int index)
     {
-        return board[position.getRow()][position.getCol()];
+        return getTile(index).isAccessible();
     }
 
-    Cell getCell(int id)
+    // does the cell with dense index `index' contain a heart?
+    boolean isHeart(int index)
     {
-        return getCell(idToCell.get(id));
+        return tiles[index] == Tile.HEART.ordinal();
     }
 
+    // open directions of the cell with dense index `index', as a
+    // combination of bits 1 << d.ordinal() for Direction d
+    int getOpenDirections(int index)
+    {
+        return openDirections[index];
+    }
+
+    // dense index of the neighbor of the cell with dense index `index'
+    // in the direction with ordinal `direction', which must be open
+    int getNeighbor(int index, int direction)
+    {
+        return index + offsets[direction];
+    }
+
+    private byte computeOpenDirections(int index)
+    {
+        int row = index / nCols, col = index % nCols;
+        int open = 0;
+        if (row > 0 && isAccessible(index - nCols))
+            open |= 1 << Direction.NORTH.ordinal();
+        if (row < nRows - 1 && isAccessible(index + nCols))
+            open |= 1 << Direction.SOUTH.ordinal();
+        if (col > 0 && isAccessible(index - 1))
+            open |= 1 << Direction.WEST.ordinal();
+        if (col < nCols - 1 && isAccessible(index + 1))
+            open |= 1 << Direction.EAST.ordinal();
+        return (byte) open;
+    }
+
+    // recomputes the open directions of the neighbors of the cell with
+    // dense index `index', after its tile has changed
+    private void updateOpenDirections(int index)
+    {
+        int row = index / nCols, col = index % nCols;
+        if (row > 0)
+            openDirections[index - nCols] = computeOpenDirections(index - nCols);
+        if (row < nRows - 1)
+            openDirections[index + nCols] = computeOpenDirections(index + nCols);
+        if (col > 0)
+            openDirections[index - 1] = computeOpenDirections(index - 1);
+        if (col < nCols - 1)
+            openDirections[index + 1] = computeOpenDirections(index + 1);
+    }
+
+    // position of node id; null if no cell has id
     Position getPosition(int id)
     {
-        return idToCell.get(id);
+        int offset = id + ids.length;
+        if (offset < 0 || offset >= indices.length || indices[offset] < 0)
+            return null;
+        int index = indices[offset];
+        return new Position(index / nCols, index % nCols);
+    }
+
+    // dense index of node id, in 0 .. nRows*nCols - 1
+    int getIndex(int id)
+    {
+        return indices[id + ids.length];
+    }
+
+    // node id with dense index `index'
+    int getId(int index)
+    {
+        return ids[index];
+    }
+
+    List<Integer> getHearts()
+    {
+        return hearts;
+    }
+
+    // Manhattan distance from dense index `index' to the nearest heart,
+    // ignoring walls; Integer.MAX_VALUE if there are no hearts
+    int getHeartDistance(int index)
+    {
+        if (hearts.isEmpty())
+            return Integer.MAX_VALUE;
+        int[] distances = heartDistances;
+        if (distances == null) {
+            distances = manhattanTransform();
+            heartDistances = distances;
+        }
+        return distances[index];
+    }
+
+    // two-pass distance transform, exact for the Manhattan distance
+    private int[] manhattanTransform()
+    {
+        int[] distances = new int[nRows*nCols];
+        Arrays.fill(distances, nRows + nCols);
+        for (int index: hearts)
+            distances[index] = 0;
+        for (int row = 0, index = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++, index++) {
+                if (row > 0)
+                    distances[index] = Math.min(distances[index], distances[index - nCols] + 1);
+                if (col > 0)
+                    distances[index] = Math.min(distances[index], distances[index - 1] + 1);
+            }
+        }
+        for (int row = nRows - 1, index = nRows*nCols - 1; row >= 0; row--) {
+            for (int col = nCols - 1; col >= 0; col--, index--) {
+                if (row < nRows - 1)
+                    distances[index] = Math.min(distances[index], distances[index + nCols] + 1);
+                if (col < nCols - 1)
+                    distances[index] = Math.min(distances[index], distances[index + 1] + 1);
+            }
+        }
+        return distances;
     }
 
     int getWidth()
     {
-        return nCols * board[0][0].getWidth();
+        return nCols * getCell(0, 0).getWidth();
     }
 
     int getHeight()
     {
-        return nRows * board[0][0].getHeight();
+        return nRows * getCell(0, 0).getHeight();
     }
 
     int getRows()
@@ -104,78 +277,22 @@ public class Board
     // thread unsafe
     void markPath(List<Integer> path)
     {
-        List<Position> positionPath = pathToPositions(path);
-        for (Position position: positionPath) {
-            int row = position.getRow(), col = position.getCol();
-            board[row][col] = getCell(position).marked();
-        }
+        for (int id: path)
+            markIndex(getIndex(id));
     }
 
-    private void readMap(String mapFile)
-    throws FileNotFoundException, IOException
-    {
-        Cell cell;
-        int row = 0, col = 0, nId = 0;
-        List<Integer> ids = null;
-        try (BufferedReader br = new BufferedReader(new FileReader(mapFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // remove whitespaces
-                line = line.replaceAll("\\s", "");
-                StringReader lineReader = new StringReader(line);
-                int ch, id = 0;
-                line_loop:
-                while ((ch = lineReader.read()) != -1) {
-                    switch (ch) {
-                    case '@':
-                        break line_loop;
-                    case '$':
-                        Pattern p = Pattern.compile("^\\$(\\d+),(\\d+)$");
-                        Matcher m = p.matcher(line);
-                        if (m.find()) {
-                            nRows = Integer.parseInt(m.group(1));
-                            nCols = Integer.parseInt(m.group(2));
-                            board = new Cell[nRows][nCols];
-                            int numCells = nRows*nCols;
-                            ids = new ArrayList<>(2*numCells);
-                            for (int i = -numCells; i < numCells; i++)
-                                ids.add(i);
-                            Collections.shuffle(ids);
-                            idToCell = new HashMap<>(numCells);
-                        }
-                        break line_loop;
-                    default:
-                        if (row < nRows && col < nCols)
-                            id = ids.get(nId++);
-                        if (ch == Tile.EMPTY.getChar())
-                            cell = new Cell(Tile.EMPTY, id);
-                        else if (ch == Tile.SOLID.getChar())
-                            cell = new Cell(Tile.SOLID, id);
-                        else if (ch == Tile.BRICK.getChar())
-                            cell = new Cell(Tile.BRICK, id);
-                        else if (ch == Tile.HEART.getChar())
-                            cell = new Cell(Tile.HEART, id);
-                        else {
-                            System.out.println("Unrecognized symbol " +
-                                               Character.toString((char) ch) + " on " +
-                                               "row " + row + " column " + col);
-                            System.out.println("... using empty cell instead.");
-                            cell = new Cell(Tile.EMPTY, id);
-                        }
-                    }
-                    // Ignore rows and columns beyond the declared ones
-                    if (row < nRows && col < nCols) {
-                        board[row][col] = cell;
-                        idToCell.put(id, new Position(row, col));
-                        col += 1;
-                    }
-                }
-                if (nCols > 0 && col == nCols) {
-                    row += 1;
-                    col = 0;
-                }
-            }
-        }
+    // thread unsafe
+    void markPath(PathResult path)
+    {
+        PrimitiveIterator.OfInt indices = path.indices();
+        while (indices.hasNext())
+            markIndex(indices.nextInt());
+    }
+
+    private void markIndex(int index)
+    {
+        tiles[index] = (byte) getTile(index).marked().ordinal();
+        updateOpenDirections(index);
     }
 
     String asText()
@@ -184,7 +301,7 @@ public class Board
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nCols; col++) {
                 result.append(' ');
-                result.append(board[row][col].getText());
+                result.append(getCell(row, col).getText());
             }
             result.append('\n');
         }
@@ -194,13 +311,7 @@ public class Board
     // printable deep copy of the board with all players in consistent positions
     Board consistentBoard()
     {
-        Board result = new Board(nRows, nCols);
-        for (int row = 0; row < nRows; row++) {
-            for (int col = 0; col < nCols; col++) {
-                Cell cell = board[row][col];
-                result.board[row][col] = new Cell(cell.getTile(), cell.getId());
-            }
-        }
+        Board result = new Board(nRows, nCols, tiles.clone(), ids, indices, hearts);
         for (Player player: players.values()) {
             Position pos = player.getPosition();
             Player newPlayer = new Player(player.getId(), player.getName());
@@ -209,6 +320,52 @@ public class Board
         return result;
     }
 
+    // copy of the board where the accessible cells that are not `open'
+    // become solid; node ids are the same as in this board
+    Board filled(boolean[] open)
+    {
+        byte[] filledTiles = tiles.clone();
+        for (int index = 0; index < tiles.length; index++) {
+            if (isAccessible(index) && !open[index])
+                filledTiles[index] = (byte) Tile.SOLID.ordinal();
+        }
+        return new Board(nRows, nCols, filledTiles, ids, indices, hearts);
+    }
+
+    // replaces the tile `from' of the cell with dense index `index' with
+    // tile `to'; does nothing and returns false if the cell's tile is not `from'
+    // thread unsafe
+    boolean setTile(int index, Tile from, Tile to)
+    {
+        if (getTile(index) != from)
+            return false;
+        tiles[index] = (byte) to.ordinal();
+        updateOpenDirections(index);
+        revision += 1;
+        return true;
+    }
+
+    int getRevision()
+    {
+        return revision;
+    }
+
+    // accessible cells packed into bits: row `row' occupies the
+    // (nCols + 63) / 64 words starting at row*((nCols + 63) / 64),
+    // with column `col' in bit col % 64 of word col / 64 of the row
+    long[] getAccessibleBits()
+    {
+        int words = (nCols + 63) >>> 6;
+        long[] bits = new long[nRows*words];
+        for (int row = 0, index = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++, index++) {
+                if (isAccessible(index))
+                    bits[row*words + (col >>> 6)] |= 1L << col;
+            }
+        }
+        return bits;
+    }
+
     // is the position row, col a valid position on the board?
     boolean isOnBoard(int row, int col)
     {
@@ -217,35 +374,24 @@ public class Board
 
     boolean isAccessible(int row, int col)
     {
-        return isOnBoard(row, col) && board[row][col].isAccessible();
+        return isOnBoard(row, col) && isAccessible(row*nCols + col);
     }
 
     Position move(Position position, Direction direction)
     {
-        int newRow = position.getRow(), newCol = position.getCol();
-        switch (direction) {
-        case NORTH:
-            newRow -= 1;
-            break;
-        case SOUTH:
-            newRow += 1;
-            break;
-        case WEST:
-            newCol -= 1;
-            break;
-        case EAST:
-            newCol += 1;
-            break;
-        }
-        if (isAccessible(newRow, newCol))
-            return new Position(newRow, newCol);
-        return null;
+        if (!isOnBoard(position.getRow(), position.getCol()))
+            return null;
+        int index = position.getRow()*nCols + position.getCol();
+        if ((openDirections[index] & (1 << direction.ordinal())) == 0)
+            return null;
+        int newIndex = getNeighbor(index, direction.ordinal());
+        return new Position(newIndex / nCols, newIndex % nCols);
     }
 
     void register(Player player, int row, int col)
     {
         if (isOnBoard(row, col)) {
-            board[row][col].add(player);
+            occupy(row*nCols + col, player);
             players.put(player.getId(), player);
         }
     }
@@ -261,7 +407,7 @@ public class Board
     void deregister(Player player, int row, int col)
     {
         if (isOnBoard(row, col)) {
-            board[row][col].remove(player);
+            vacate(row*nCols + col, player);
             players.remove(player.getId());
         }
     }
@@ -286,10 +432,33 @@ public class Board
         int row = player.getRow();
         int col = player.getCol();
         if (isOnBoard(newRow, newCol) && players.containsKey(player.getId())) {
-            board[row][col].remove(player);
-            board[newRow][newCol].add(player);
+            vacate(row*nCols + col, player);
+            occupy(newRow*nCols + newCol, player);
             player.setRow(newRow);
             player.setCol(newCol);
         }
     }
+
+    // adds `player' to the cell with dense index `index', if accessible
+    private void occupy(int index, Player player)
+    {
+        if (!isAccessible(index))
+            return;
+        occupants.compute(index, (key, cellPlayers) -> {
+                if (cellPlayers == null)
+                    cellPlayers = new ConcurrentLinkedQueue<>();
+                cellPlayers.add(player);
+                return cellPlayers;
+            });
+    }
+
+    // removes `player' from the cell with dense index `index'; the
+    // entry of the cell goes when its last player leaves
+    private void vacate(int index, Player player)
+    {
+        occupants.computeIfPresent(index, (key, cellPlayers) -> {
+                cellPlayers.remove(player);
+                return cellPlayers.isEmpty() ? null : cellPlayers;
+            });
+    }
 }
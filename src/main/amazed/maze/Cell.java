@@ -1,29 +1,35 @@
 package amazed.maze;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.awt.Image;
 import java.awt.Graphics;
 import java.awt.Toolkit;
 
 
+// snapshot of a cell of the board, materialised for rendering only
 class Cell
 {
+    private static final Player[] NO_PLAYERS = new Player[0];
+
     private final Tile tile;
-    private final Queue<Player> players;
+    private final Player[] players;
 
     private final Image image;
     private final Character text;
     private final int id;
 
-    Cell(Tile tile, int id)
+    Cell(Tile tile, int id, Player[] players)
     {
         this.tile = tile;
         this.image = tile.getImage();
         this.text = tile.getText();
         this.id = id;
 
-        this.players = new ConcurrentLinkedQueue<>();
+        this.players = players;
+    }
+
+    Cell(Tile tile, int id)
+    {
+        this(tile, id, NO_PLAYERS);
     }
 
     Tile getTile()
@@ -38,18 +44,18 @@ class Cell
 
     Image getImage()
     {
-        if (players.isEmpty())
+        if (players.length == 0)
             return image;
         else
-            return players.element().getImage();
+            return players[0].getImage();
     }
 
     Character getText()
     {
-        if (players.isEmpty())
+        if (players.length == 0)
             return text;
         else
-            return players.element().getText();
+            return players[0].getText();
     }
 
     int getWidth()
@@ -64,22 +70,7 @@ class Cell
 
     boolean isAccessible()
     {
-        return tile == Tile.EMPTY || tile == Tile.HEART;
-    }
-
-    boolean isMarkable()
-    {
-        return tile == Tile.EMPTY || tile == Tile.HEART;
-    }
-
-    Cell marked()
-    {
-        if (!isMarkable())
-            return this;
-        if (isHeart())
-            return new Cell(Tile.FOUND, id);
-        else
-            return new Cell(Tile.MARKED, id);
+        return tile.isAccessible();
     }
 
     public boolean isHeart()
@@ -87,21 +78,9 @@ class Cell
         return tile == Tile.HEART;
     }
 
-    void add(Player player)
-    {
-        if (isAccessible())
-            players.add(player);
-    }
-
-    void remove(Player player)
-    {
-        if (isAccessible())
-            players.remove(player);
-    }
-
     // return a copy of the players list
     Player[] getPlayers()
     {
-        return players.toArray(new Player[0]);
+        return players.clone();
     }
 }
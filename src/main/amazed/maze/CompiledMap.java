@@ -0,0 +1,296 @@
+package amazed.maze;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * <code>CompiledMap</code> reads and writes maps in a compact binary
+ * format, which loads much faster than the text format of
+ * <code>.map</code> files.
+ * <p>
+ * A compiled map starts with a header of big-endian fields: the magic
+ * number <code>AMZB</code>, a format version, the encoding of the
+ * tiles, the number of rows and columns, the seed of the node
+ * identifiers, the length and CRC32C checksum of the text map it was
+ * compiled from, and the list of the cells with a goal. Then come the
+ * tiles, two bits per cell in row-major order, four cells per byte
+ * starting from the least significant bits; the packed bytes are
+ * optionally run-length encoded, whichever is smaller. A seed of
+ * <code>0</code> means that node identifiers are random at every
+ * load, as with text maps (unless system property
+ * <code>amazed.seed</code> is set); any other seed generates the
+ * same identifiers at every load.
+ * <p>
+ * <code>Maze</code> recognizes compiled maps by their magic number,
+ * whatever the name of the file. If system property
+ * <code>amazed.mapCache</code> is <code>true</code>, loading a text
+ * map also writes a compiled copy next to it, with suffix
+ * <code>.amzb</code>, and later loads of the same text read the copy
+ * instead, as long as the length and checksum of the text match those
+ * recorded in the copy.
+ */
+
+public final class CompiledMap
+{
+    /**
+     * Suffix of the compiled copies of text maps.
+     */
+    public static final String SUFFIX = ".amzb";
+
+    // "AMZB"
+    private static final int MAGIC = 0x414d5a42;
+    private static final short VERSION = 1;
+
+    // encodings of the tiles
+    private static final byte PACKED = 0;
+    private static final byte RUN_LENGTH = 1;
+
+    // tile of every 2-bit code
+    private static final Tile[] CODES = { Tile.EMPTY, Tile.BRICK, Tile.SOLID, Tile.HEART };
+
+    // is the cache of compiled copies of text maps enabled?
+    private static final boolean CACHE = Boolean.getBoolean("amazed.mapCache");
+
+    private CompiledMap()
+    {
+    }
+
+    /**
+     * Compiles a text map into a binary map.
+     *
+     * @param mapFile        the name of the text map
+     * @param compiledFile   the name of the compiled map to be written
+     * @param idSeed         the seed of the node identifiers; <code>0</code>
+     *                       for random identifiers at every load
+     * @throws IOException   if the text map cannot be read, or the compiled
+     *                       map cannot be written
+     */
+    public static void compile(String mapFile, String compiledFile, long idSeed)
+    throws IOException
+    {
+        Path source = Paths.get(mapFile);
+        write(MapLoader.load(mapFile), Files.size(source), checksum(source), idSeed, Paths.get(compiledFile));
+    }
+
+    // is `filename' a compiled map?
+    static boolean isCompiled(String filename)
+    throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0)
+                ;
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    // board from compiled map `filename'
+    static Board read(String filename)
+    throws IOException
+    {
+        Board board = read(map(Paths.get(filename)), -1, 0);
+        if (board == null)
+            throw new IOException("Malformed compiled map " + filename);
+        return board;
+    }
+
+    // board from text map `filename', through its compiled copy if the
+    // cache is enabled
+    static Board readCached(String filename)
+    throws IOException
+    {
+        if (!CACHE)
+            return MapLoader.load(filename);
+        Path source = Paths.get(filename);
+        long length = Files.size(source);
+        int crc = checksum(source);
+        Path copy = Paths.get(filename + SUFFIX);
+        if (Files.isRegularFile(copy)) {
+            Board board = read(map(copy), length, crc);
+            if (board != null)
+                return board;
+        }
+        Board board = MapLoader.load(filename);
+        try {
+            write(board, length, crc, 0, copy);
+        } catch (IOException e) {
+            // the cache is best effort: the map is loaded anyway
+        }
+        return board;
+    }
+
+    private static ByteBuffer map(Path path)
+    throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int checksum(Path path)
+    throws IOException
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(map(path));
+        return (int) crc.getValue();
+    }
+
+    // board from compiled map `in'; null if `in' is malformed, or if it
+    // was not compiled from a text of `length' bytes with checksum `crc'
+    // (any text if `length' is negative)
+    private static Board read(ByteBuffer in, long length, int crc)
+    {
+        try {
+            if (in.getInt() != MAGIC || in.getShort() != VERSION)
+                return null;
+            byte encoding = in.get();
+            int nRows = in.getInt(), nCols = in.getInt();
+            long idSeed = in.getLong();
+            long sourceLength = in.getLong();
+            int sourceCrc = in.getInt();
+            if (length >= 0 && (sourceLength != length || sourceCrc != crc))
+                return null;
+            if (nRows < 0 || nCols < 0)
+                return null;
+            int numCells = Math.multiplyExact(nRows, nCols);
+            int nHearts = in.getInt();
+            if (nHearts < 0 || nHearts > in.remaining()/4)
+                return null;
+            List<Integer> hearts = new ArrayList<>(nHearts);
+            for (int k = 0; k < nHearts; k++) {
+                int index = in.getInt();
+                if (index < 0 || index >= numCells)
+                    return null;
+                hearts.add(index);
+            }
+
+            byte[] packed = new byte[(numCells + 3) / 4];
+            if (encoding == PACKED)
+                in.get(packed);
+            else if (encoding != RUN_LENGTH || !decodeRuns(in, packed))
+                return null;
+
+            byte[] tiles = new byte[numCells];
+            int[] ids = new int[numCells];
+            IdPool idPool = new IdPool(numCells, idSeed == 0 ? IdPool.newRandom() : new Random(idSeed));
+            for (int index = 0; index < numCells; index++) {
+                int code = (packed[index >>> 2] >>> ((index & 3) << 1)) & 3;
+                tiles[index] = (byte) CODES[code].ordinal();
+                ids[index] = idPool.next();
+            }
+            return new Board(nRows, nCols, tiles, ids, hearts);
+        } catch (BufferUnderflowException | ArithmeticException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void write(Board board, long sourceLength, int sourceCrc, long idSeed, Path out)
+    throws IOException
+    {
+        int numCells = board.getRows()*board.getCols();
+        byte[] packed = new byte[(numCells + 3) / 4];
+        for (int index = 0; index < numCells; index++)
+            packed[index >>> 2] |= code(board.getTile(index)) << ((index & 3) << 1);
+        byte[] runs = encodeRuns(packed);
+        byte[] data = runs != null ? runs : packed;
+
+        List<Integer> hearts = board.getHearts();
+        ByteBuffer header = ByteBuffer.allocate(4 + 2 + 1 + 4 + 4 + 8 + 8 + 4 + 4 + 4*hearts.size());
+        header.putInt(MAGIC).putShort(VERSION).put(runs != null ? RUN_LENGTH : PACKED);
+        header.putInt(board.getRows()).putInt(board.getCols());
+        header.putLong(idSeed).putLong(sourceLength).putInt(sourceCrc);
+        header.putInt(hearts.size());
+        for (int index: hearts)
+            header.putInt(index);
+        header.flip();
+
+        // write a temporary file, and move it in place once complete
+        Path temporary = out.resolveSibling(out.getFileName() + "."
+                                            + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                                                        StandardOpenOption.WRITE)) {
+                ByteBuffer body = ByteBuffer.wrap(data);
+                while (header.hasRemaining())
+                    channel.write(header);
+                while (body.hasRemaining())
+                    channel.write(body);
+            }
+            Files.move(temporary, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static int code(Tile tile)
+    {
+        for (int code = 0; code < CODES.length; code++) {
+            if (CODES[code] == tile)
+                return code;
+        }
+        throw new IllegalArgumentException("Tile " + tile + " cannot be compiled");
+    }
+
+    // runs of equal bytes, each as a varint count followed by the byte;
+    // null if the runs take no fewer bytes than `packed'
+    private static byte[] encodeRuns(byte[] packed)
+    {
+        ByteBuffer runs = ByteBuffer.allocate(packed.length);
+        int k = 0;
+        while (k < packed.length) {
+            int start = k;
+            while (k < packed.length && packed[k] == packed[start])
+                k++;
+            // give up as soon as runs may not be smaller than the packed bytes
+            if (runs.remaining() < 6)
+                return null;
+            for (int count = k - start; ; count >>>= 7) {
+                if (count < 0x80) {
+                    runs.put((byte) count);
+                    break;
+                }
+                runs.put((byte) (count | 0x80));
+            }
+            runs.put(packed[start]);
+        }
+        byte[] result = new byte[runs.position()];
+        runs.flip();
+        runs.get(result);
+        return result;
+    }
+
+    // decodes runs from `in' filling all of `packed'; false if malformed
+    private static boolean decodeRuns(ByteBuffer in, byte[] packed)
+    {
+        int k = 0;
+        while (k < packed.length) {
+            int count = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                count |= (b & 0x7f) << shift;
+                if (b >= 0)
+                    break;
+                if (shift > 21)
+                    return false;
+            }
+            byte value = in.get();
+            if (count <= 0 || count > packed.length - k)
+                return false;
+            for (int end = k + count; k < end; k++)
+                packed[k] = value;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+package amazed.maze;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+// Connected components of the accessible cells of a board, by
+// union-find over row stripes.
+//
+// The board is split into stripes of consecutive rows. Every stripe
+// unions each accessible cell with its accessible neighbors to the
+// west and to the north within the stripe; stripes run in parallel,
+// and only touch the entries of their own cells. Then the cells on the
+// two sides of every boundary between stripes are unioned, which takes
+// time proportional to the number of columns per boundary. A union
+// always links the root with the larger index under the other, so
+// that the parent of a cell never has a larger index than the cell:
+// a single pass in index order labels every cell with the smallest
+// index in its component.
+//
+// After construction, the index is read-only; it describes the board
+// at the revision it was built from.
+class ComponentIndex
+{
+    // minimum number of rows in a stripe
+    private static final int MIN_STRIPE_ROWS = 16;
+
+    private final int nRows;
+    private final int nCols;
+    private final int revision;
+    // dense index --> parent in the union-find forest; -1 if not accessible
+    // after construction: smallest dense index in the same component
+    private final int[] component;
+    // dense index of a component label --> does the component have a heart?
+    private final boolean[] hasHeart;
+
+    ComponentIndex(Board board)
+    {
+        nRows = board.getRows();
+        nCols = board.getCols();
+        revision = board.getRevision();
+        component = new int[nRows*nCols];
+        hasHeart = new boolean[nRows*nCols];
+
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int stripeRows = Math.max(MIN_STRIPE_ROWS, (nRows + 4*parallelism - 1) / (4*parallelism));
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int top = 0; top < nRows; top += stripeRows) {
+            final int from = top, to = Math.min(top + stripeRows, nRows);
+            tasks.add(ForkJoinTask.adapt(() -> unionStripe(board, from, to)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (int row = stripeRows; row < nRows; row += stripeRows) {
+            for (int index = row*nCols; index < (row + 1)*nCols; index++) {
+                if (component[index] >= 0 && component[index - nCols] >= 0)
+                    union(index, index - nCols);
+            }
+        }
+        // parents precede their children in index order
+        for (int index = 0; index < component.length; index++) {
+            int parent = component[index];
+            if (parent >= 0 && parent != index)
+                component[index] = component[parent];
+        }
+        for (int index: board.getHearts())
+            hasHeart[component[index]] = true;
+    }
+
+    private void unionStripe(Board board, int top, int bottom)
+    {
+        for (int row = top; row < bottom; row++) {
+            for (int col = 0, index = row*nCols; col < nCols; col++, index++) {
+                if (!board.isAccessible(row, col)) {
+                    component[index] = -1;
+                    continue;
+                }
+                component[index] = index;
+                if (col > 0 && component[index - 1] >= 0)
+                    union(index, index - 1);
+                if (row > top && component[index - nCols] >= 0)
+                    union(index, index - nCols);
+            }
+        }
+    }
+
+    private int find(int index)
+    {
+        // path halving
+        while (component[index] != index) {
+            component[index] = component[component[index]];
+            index = component[index];
+        }
+        return index;
+    }
+
+    private void union(int a, int b)
+    {
+        int rootA = find(a), rootB = find(b);
+        if (rootA < rootB)
+            component[rootB] = rootA;
+        else if (rootB < rootA)
+            component[rootA] = rootB;
+    }
+
+    int getRevision()
+    {
+        return revision;
+    }
+
+    // is the cell with dense index `index' accessible and in the same
+    // component as a heart?
+    boolean reachesHeart(int index)
+    {
+        int label = component[index];
+        return label >= 0 && hasHeart[label];
+    }
+
+    // are the cells with dense indices `a' and `b' accessible and in
+    // the same component?
+    boolean connected(int a, int b)
+    {
+        return component[a] >= 0 && component[a] == component[b];
+    }
+}
@@ -0,0 +1,171 @@
+package amazed.maze;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+// Dead-end filling, as a parallel cellular automaton over row stripes.
+//
+// An accessible cell with at most one accessible neighbor, which is
+// neither the start cell nor a heart, cannot be on a path between the
+// start and a heart that does not go back on itself: it is filled
+// (made inaccessible), which may turn its neighbor into a dead end in
+// turn. Filling is repeated until no dead ends are left.
+//
+// The board is split into stripes of consecutive rows, which are
+// filled in parallel. Within a pass, every stripe fills its own rows
+// until they have no dead ends left, reading the rows just above and
+// below it from a snapshot (halo) taken at the beginning of the pass.
+// Between passes, stripes exchange their boundary rows by taking new
+// snapshots. Passes repeat as long as some boundary row changes.
+class DeadEndFiller
+{
+    // minimum number of rows in a stripe
+    private static final int MIN_STRIPE_ROWS = 16;
+
+    private final int nRows;
+    private final int nCols;
+    // dense index --> is the cell accessible?
+    private final boolean[] open;
+    // dense index --> can the cell never be filled?
+    private final boolean[] kept;
+
+    private DeadEndFiller(Board board)
+    {
+        nRows = board.getRows();
+        nCols = board.getCols();
+        open = new boolean[nRows*nCols];
+        kept = new boolean[nRows*nCols];
+        for (int row = 0, index = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++, index++)
+                open[index] = board.isAccessible(row, col);
+        }
+        kept[0] = true;
+        for (int index: board.getHearts())
+            kept[index] = true;
+    }
+
+    // copy of `board' with all dead ends filled with solid cells
+    static Board fill(Board board)
+    {
+        DeadEndFiller filler = new DeadEndFiller(board);
+        filler.fill();
+        return board.filled(filler.open);
+    }
+
+    private void fill()
+    {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int stripeRows = Math.max(MIN_STRIPE_ROWS, (nRows + 4*parallelism - 1) / (4*parallelism));
+        List<Stripe> stripes = new ArrayList<>();
+        for (int top = 0; top < nRows; top += stripeRows)
+            stripes.add(new Stripe(top, Math.min(top + stripeRows, nRows)));
+
+        boolean firstPass = true;
+        boolean changed = true;
+        while (changed) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(stripes.size());
+            for (Stripe stripe: stripes) {
+                stripe.exchangeHalo();
+                final boolean all = firstPass;
+                tasks.add(ForkJoinTask.adapt(() -> stripe.fill(all)));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            changed = false;
+            for (Stripe stripe: stripes)
+                changed |= stripe.boundaryChanged;
+            firstPass = false;
+        }
+    }
+
+    // rows top .. bottom - 1
+    private class Stripe
+    {
+        private final int top;
+        private final int bottom;
+        // snapshots of rows top - 1 and bottom
+        private final boolean[] above;
+        private final boolean[] below;
+        // has a cell in row top or bottom - 1 been filled in the last pass?
+        private boolean boundaryChanged;
+        // cells to be checked
+        private int[] work = new int[64];
+        private int workSize;
+
+        Stripe(int top, int bottom)
+        {
+            this.top = top;
+            this.bottom = bottom;
+            above = new boolean[nCols];
+            below = new boolean[nCols];
+        }
+
+        void exchangeHalo()
+        {
+            if (top > 0)
+                System.arraycopy(open, (top - 1)*nCols, above, 0, nCols);
+            if (bottom < nRows)
+                System.arraycopy(open, bottom*nCols, below, 0, nCols);
+        }
+
+        // fills dead ends in the stripe; checks all cells if `all',
+        // otherwise only the cells in boundary rows
+        void fill(boolean all)
+        {
+            boundaryChanged = false;
+            workSize = 0;
+            if (all) {
+                for (int index = top*nCols; index < bottom*nCols; index++)
+                    push(index);
+            } else {
+                for (int col = 0; col < nCols; col++) {
+                    push(top*nCols + col);
+                    push((bottom - 1)*nCols + col);
+                }
+            }
+            while (workSize > 0) {
+                int index = work[--workSize];
+                if (!open[index] || kept[index] || openNeighbors(index) > 1)
+                    continue;
+                open[index] = false;
+                int row = index / nCols;
+                if (row == top || row == bottom - 1)
+                    boundaryChanged = true;
+                // neighbors within the stripe may have become dead ends
+                if (row > top)
+                    push(index - nCols);
+                if (row < bottom - 1)
+                    push(index + nCols);
+                if (index % nCols > 0)
+                    push(index - 1);
+                if (index % nCols < nCols - 1)
+                    push(index + 1);
+            }
+        }
+
+        private int openNeighbors(int index)
+        {
+            int row = index / nCols, col = index % nCols;
+            int count = 0;
+            if (row > 0 && (row > top ? open[index - nCols] : above[col]))
+                count += 1;
+            if (row < nRows - 1 && (row < bottom - 1 ? open[index + nCols] : below[col]))
+                count += 1;
+            if (col > 0 && open[index - 1])
+                count += 1;
+            if (col < nCols - 1 && open[index + 1])
+                count += 1;
+            return count;
+        }
+
+        private void push(int index)
+        {
+            if (workSize == work.length)
+                work = Arrays.copyOf(work, 2*workSize);
+            work[workSize++] = index;
+        }
+    }
+}
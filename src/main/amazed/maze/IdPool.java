@@ -0,0 +1,45 @@
+package amazed.maze;
+
+import java.util.Random;
+
+
+// Random node ids for the cells of a board: the ids are drawn without
+// replacement from -numCells .. numCells - 1, by a partial Fisher-Yates
+// shuffle of the pool that only does as many steps as ids are drawn.
+//
+// If system property `amazed.seed' is set to a number, the random
+// generators of the ids are seeded with it, so that the same map gets
+// the same ids at every launch of the JVM.
+class IdPool
+{
+    // seed of the random generators of ids; null for unseeded generators
+    private static final Long SEED = Long.getLong("amazed.seed");
+
+    private final Random random;
+    private final int[] pool;
+    // number of ids drawn so far
+    private int drawn;
+
+    IdPool(int numCells, Random random)
+    {
+        this.random = random;
+        pool = new int[2*numCells];
+        for (int i = 0; i < pool.length; i++)
+            pool[i] = i - numCells;
+    }
+
+    // new random generator of ids, seeded with `amazed.seed' if set
+    static Random newRandom()
+    {
+        return SEED == null ? new Random() : new Random(SEED);
+    }
+
+    int next()
+    {
+        int j = drawn + random.nextInt(pool.length - drawn);
+        int id = pool[j];
+        pool[j] = pool[drawn];
+        pool[drawn++] = id;
+        return id;
+    }
+}
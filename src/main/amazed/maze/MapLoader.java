@@ -0,0 +1,293 @@
+package amazed.maze;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+// Single-pass loader of map files. The file is memory-mapped and parsed
+// byte by byte, with the same rules as reading it line by line:
+// whitespace is ignored; `@' starts a comment up to the end of the line;
+// a line `$ rows , cols' declares the size of the board, and any other
+// line with a `$' is ignored from the `$' on; every other symbol is a
+// cell, filling the board row by row, with unrecognized symbols read as
+// empty cells, and cells beyond the declared rows and columns ignored.
+// Cells declared but missing from the end of the file are empty too.
+// Symbols outside ASCII are decoded with the default charset, as a
+// FileReader would: as UTF-8 sequences if that is the default, and one
+// byte at a time otherwise.
+//
+// The loader hands the size and the cells of the map to a sink, in
+// row-major order; the default sink builds a board.
+class MapLoader
+{
+    // receives the cells of a map as it is parsed
+    interface Sink
+    {
+        // the map declares `rows' rows and `cols' columns
+        void size(int rows, int cols)
+        throws IOException;
+
+        // the cell with dense index `index' has tile `tile'
+        void cell(int index, Tile tile)
+        throws IOException;
+    }
+
+    // largest region of the file mapped at once
+    private static final long REGION_SIZE = 1L << 30;
+    private static final Tile[] TILES = Tile.values();
+
+    // byte --> ordinal of the tile with that symbol; -1 if unrecognized
+    private final byte[] tileOf = new byte[128];
+    // are bytes outside ASCII decoded as UTF-8?
+    private final boolean utf8;
+    // byte - 128 --> its symbol, if the default charset is not UTF-8
+    private final char[] highBytes = new char[128];
+
+    private final Sink sink;
+
+    // parsing state
+    private int nRows;
+    private int nCols;
+    private int row, col;
+    // no symbol read yet on the current line
+    private boolean lineStart = true;
+    // rest of the current line ignored
+    private boolean skipLine;
+    // reading a `$' line; its symbols after the `$' are kept in `header'
+    private boolean inHeader;
+    private final StringBuilder header = new StringBuilder();
+    // bytes of a multi-byte UTF-8 symbol still to be read, and the symbol
+    private int pendingBytes;
+    private int codePoint;
+
+    private MapLoader(Sink sink)
+    {
+        this.sink = sink;
+        Charset charset = Charset.defaultCharset();
+        utf8 = charset.equals(StandardCharsets.UTF_8);
+        for (int b = 128; b < 256; b++)
+            highBytes[b - 128] = new String(new byte[] { (byte) b }, charset).charAt(0);
+        Arrays.fill(tileOf, (byte) -1);
+        // later tiles take precedence if two tiles share a symbol
+        Tile[] recognized = { Tile.HEART, Tile.BRICK, Tile.SOLID, Tile.EMPTY };
+        for (Tile tile: recognized) {
+            char ch = tile.getChar();
+            if (ch < 128)
+                tileOf[ch] = (byte) tile.ordinal();
+        }
+    }
+
+    // board from map `filename'
+    static Board load(String filename)
+    throws IOException
+    {
+        BoardSink board = new BoardSink();
+        parse(filename, board);
+        board.finish();
+        return new Board(board.nRows, board.nCols, board.tiles, board.ids, board.hearts);
+    }
+
+    // parses map `filename' into `sink'
+    static void parse(String filename, Sink sink)
+    throws IOException
+    {
+        new MapLoader(sink).parse(filename);
+    }
+
+    private void parse(String filename)
+    throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long offset = 0; offset < size; offset += REGION_SIZE) {
+                MappedByteBuffer region =
+                    channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(REGION_SIZE, size - offset));
+                int limit = region.limit();
+                for (int k = 0; k < limit; k++)
+                    next(region.get(k));
+            }
+        }
+        endLine();
+    }
+
+    private void next(byte b)
+    throws IOException
+    {
+        if (pendingBytes > 0) {
+            // continuation of a multi-byte symbol
+            codePoint = (codePoint << 6) | (b & 0x3f);
+            if (--pendingBytes == 0) {
+                for (char ch: Character.toChars(codePoint))
+                    symbol(ch);
+            }
+            return;
+        }
+        switch (b) {
+        case '\n':
+        case '\r':
+            endLine();
+            return;
+        case ' ':
+        case '\t':
+        case 0x0b:
+        case '\f':
+            return;
+        default:
+            break;
+        }
+        if (b >= 0) {
+            symbol((char) b);
+        } else if (!utf8) {
+            symbol(highBytes[b + 128]);
+        } else if ((b & 0xe0) == 0xc0) {
+            codePoint = b & 0x1f;
+            pendingBytes = 1;
+        } else if ((b & 0xf0) == 0xe0) {
+            codePoint = b & 0x0f;
+            pendingBytes = 2;
+        } else if ((b & 0xf8) == 0xf0) {
+            codePoint = b & 0x07;
+            pendingBytes = 3;
+        } else {
+            // not the start of a valid UTF-8 sequence
+            symbol('\uFFFD');
+        }
+    }
+
+    private void symbol(char ch)
+    throws IOException
+    {
+        boolean first = lineStart;
+        lineStart = false;
+        if (skipLine)
+            return;
+        if (inHeader) {
+            if ((ch >= '0' && ch <= '9') || ch == ',')
+                header.append(ch);
+            else
+                skipLine = true;
+            return;
+        }
+        switch (ch) {
+        case '@':
+            skipLine = true;
+            return;
+        case '$':
+            // a size declaration must take the whole line
+            if (first)
+                inHeader = true;
+            else
+                skipLine = true;
+            return;
+        default:
+            cell(ch);
+        }
+    }
+
+    private void cell(char ch)
+    throws IOException
+    {
+        boolean inside = row < nRows && col < nCols;
+        int tile = ch < 128 ? tileOf[ch] : -1;
+        if (tile < 0) {
+            System.out.println("Unrecognized symbol " +
+                               Character.toString(ch) + " on " +
+                               "row " + row + " column " + col);
+            System.out.println("... using empty cell instead.");
+            tile = Tile.EMPTY.ordinal();
+        }
+        // Ignore rows and columns beyond the declared ones
+        if (inside) {
+            sink.cell(row*nCols + col, TILES[tile]);
+            col += 1;
+        }
+    }
+
+    private void endLine()
+    throws IOException
+    {
+        if (pendingBytes > 0) {
+            // truncated multi-byte symbol
+            pendingBytes = 0;
+            symbol('\uFFFD');
+        }
+        if (inHeader && !skipLine)
+            declareSize();
+        inHeader = false;
+        skipLine = false;
+        lineStart = true;
+        header.setLength(0);
+        if (nCols > 0 && col == nCols) {
+            row += 1;
+            col = 0;
+        }
+    }
+
+    // sets the size of the board from a header `rows,cols'
+    private void declareSize()
+    throws IOException
+    {
+        int comma = header.indexOf(",");
+        if (comma <= 0 || comma == header.length() - 1 || header.indexOf(",", comma + 1) >= 0)
+            return;
+        nRows = Integer.parseInt(header.substring(0, comma));
+        nCols = Integer.parseInt(header.substring(comma + 1));
+        sink.size(nRows, nCols);
+    }
+
+    // builds the arrays of a board, drawing random node ids
+    private static class BoardSink
+        implements Sink
+    {
+        private int nRows;
+        private int nCols;
+        private byte[] tiles;
+        private int[] ids;
+        private final List<Integer> hearts = new ArrayList<>();
+        // node ids still to be given to cells
+        private IdPool idPool;
+        // number of cells received; cells come in dense index order
+        private int filled;
+
+        @Override
+        public void size(int rows, int cols)
+        {
+            nRows = rows;
+            nCols = cols;
+            int numCells = rows*cols;
+            tiles = new byte[numCells];
+            ids = new int[numCells];
+            idPool = new IdPool(numCells, IdPool.newRandom());
+        }
+
+        @Override
+        public void cell(int index, Tile tile)
+        {
+            int id = idPool.next();
+            tiles[index] = (byte) tile.ordinal();
+            ids[index] = id;
+            if (tile == Tile.HEART)
+                hearts.add(index);
+            filled = index + 1;
+        }
+
+        // gives ids to the cells that the map declares but does not
+        // supply, which stay empty
+        void finish()
+        {
+            if (tiles == null)
+                size(0, 0);
+            for (int index = filled; index < ids.length; index++)
+                ids[index] = idPool.next();
+            filled = ids.length;
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package amazed.maze;
 
+import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.HashSet;
 import java.util.ListIterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
 
 /**
  * <code>Maze</code> is the main public class through which methods
@@ -17,14 +22,33 @@ import java.util.Set;
  * <em>cell</em>, which can be thought as a room in the maze.  Every
  * node has an identifier &mdash; an integer whose value is unique
  * within the maze.  Node identifiers are generated randomly at every
- * object creation, and thus they are not persistent or deterministic.
+ * object creation, and thus they are not persistent or deterministic,
+ * unless system property <code>amazed.seed</code> is set to a number:
+ * then the same map gets the same identifiers at every launch, which
+ * makes benchmark runs reproducible.
  * <p>
  * Exploration of a maze begins at the start node, whose identifier
  * is returned by method <code>start</code>.  Given the identifier
  * of a node, method <code>neighbors</code> returns the set of
- * identifiers of all nodes adjacent to it.  Method
+ * identifiers of all nodes adjacent to it; its overload on an array,
+ * and <code>forEachNeighbor</code>, do the same without allocating.  Method
  * <code>hasGoal</code> determines if a given node contains a goal.
  * <p>
+ * Identifiers deliberately hide the position of nodes. Solvers that
+ * exploit the geometry of the maze can opt in to the <em>coordinate
+ * API</em> &mdash; methods <code>rows</code>, <code>cols</code>,
+ * <code>row</code>, <code>col</code>, <code>idAt</code>, the
+ * overloads of <code>isAccessible</code> and <code>hasGoal</code> on
+ * positions, <code>accessibleBitboard</code>, and
+ * <code>goalDistance</code> &mdash; which relates nodes
+ * to their position on the grid of cells.
+ * <p>
+ * Walls can change while the maze is in use: methods
+ * <code>open</code> and <code>close</code> turn a wall into an
+ * accessible node and vice versa. Clients that keep information about
+ * the maze across searches either check <code>revision</code>, or
+ * register a listener that is notified of every change.
+ * <p>
  * Finally, methods <code>spawn</code> and <code>move</code> animate
  * icons of players that move around the maze in its graphical
  * representation.
@@ -44,15 +68,22 @@ public class Maze
     private int delay = 500;
     private boolean animate = true;
 
+    // notified of the identifier of every node opened or closed
+    private final List<IntConsumer> wallListeners = new CopyOnWriteArrayList<>();
+
+    // connected components, built on first use and after walls change
+    private volatile ComponentIndex components;
+
 
     /**
      * Creates a maze by reading a map from file.
      *
      * @param filename   the name of the text file containing the map
+     * @throws UncheckedIOException   if the map cannot be read
      */
     Maze(String filename)
     {
-        board = new Board(filename);
+        board = Board.fromMap(filename);
     }
 
     // initialize Maze wrapping given board
@@ -61,6 +92,38 @@ public class Maze
         this.board = board;
     }
 
+    // maze without a board, for subclasses that store their nodes
+    // elsewhere and override all queries
+    Maze()
+    {
+    }
+
+    /**
+     * Returns a copy of this maze where all dead ends have been
+     * filled. A dead end is an accessible node with at most one
+     * accessible neighbor that is neither the start node nor a goal;
+     * filling it makes it inaccessible, which may create new dead ends
+     * in turn. No path from the start node to a goal that visits every
+     * node at most once goes through a dead end; thus, filling keeps
+     * all such paths, and every solver has fewer nodes to explore in
+     * the copy.
+     * <p>
+     * Filling runs in parallel on row stripes of the maze, using the
+     * common <code>ForkJoinPool</code>. Nodes have the same identifiers
+     * in the copy as in this maze; thus, a path found in the copy is
+     * also a path in this maze. The copy is not animated. When the
+     * same maze is solved repeatedly, callers should keep the copy
+     * and reuse it.
+     *
+     * @return   a copy of this maze without dead ends
+     */
+    public Maze withoutDeadEnds()
+    {
+        Maze pruned = new Maze(DeadEndFiller.fill(board));
+        pruned.setAnimate(false);
+        return pruned;
+    }
+
     void setDelay(int delay)
     {
         this.delay = delay;
@@ -81,7 +144,7 @@ public class Maze
      */
     public int start()
     {
-        return board.getCell(0, 0).getId();
+        return board.getId(0);
     }
 
     /**
@@ -96,16 +159,108 @@ public class Maze
      */
     public Set<Integer> neighbors(int id)
     {
+        int[] adjacent = new int[4];
+        int count = neighbors(id, adjacent);
         Set<Integer> neighbors = new HashSet<>(4);
-        Position position = board.getPosition(id);
-        for (Direction direction: Direction.values()) {
-            Position newPosition = board.move(position, direction);
-            if (newPosition != null)
-                neighbors.add(board.getCell(newPosition).getId());
-        }
+        for (int k = 0; k < count; k++)
+            neighbors.add(adjacent[k]);
         return neighbors;
     }
 
+    /**
+     * Stores the identifiers of all nodes directly adjacent to a given
+     * node, and accessible from it, into an array, and returns their
+     * number. Unlike <code>neighbors(int)</code>, this method does not
+     * allocate anything, and is meant for the inner loop of solvers,
+     * which can reuse the same array for every node.
+     *
+     * @param id    the identifier of a node in the maze
+     * @param out   an array of at least four elements, whose first
+     *              elements are overwritten with the identifiers of the
+     *              nodes in <code>id</code>'s neighborhood
+     * @return      the number of nodes in <code>id</code>'s neighborhood,
+     *              from zero to four
+     */
+    public int neighbors(int id, int[] out)
+    {
+        int index = board.getIndex(id);
+        int count = 0;
+        // one bit per open direction, north, south, west, east
+        for (int open = board.getOpenDirections(index); open != 0; open &= open - 1)
+            out[count++] = board.getId(board.getNeighbor(index, Integer.numberOfTrailingZeros(open)));
+        return count;
+    }
+
+    /**
+     * Performs an action on the identifier of every node directly
+     * adjacent to a given node, and accessible from it. Like
+     * <code>neighbors(int, int[])</code>, this method does not allocate
+     * anything.
+     *
+     * @param id       the identifier of a node in the maze
+     * @param action   the action performed on the identifier of every
+     *                 node in <code>id</code>'s neighborhood
+     */
+    public void forEachNeighbor(int id, IntConsumer action)
+    {
+        int index = board.getIndex(id);
+        for (int open = board.getOpenDirections(index); open != 0; open &= open - 1)
+            action.accept(board.getId(board.getNeighbor(index, Integer.numberOfTrailingZeros(open))));
+    }
+
+    /**
+     * Returns the number of nodes in the maze, including the nodes that
+     * are not accessible. Every node has a unique <em>index</em> in the
+     * range <code>0 .. size() - 1</code>, which solvers can use to key
+     * dense arrays instead of maps on node identifiers.
+     *
+     * @return   the number of nodes in the maze
+     */
+    public int size()
+    {
+        return board.getRows() * board.getCols();
+    }
+
+    /**
+     * Returns the index of a given node. The correspondence between
+     * identifiers and indices is fixed for the lifetime of the maze,
+     * but is otherwise unspecified.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the index of the node with identifier <code>id</code>,
+     *             in the range <code>0 .. size() - 1</code>
+     */
+    public int indexOf(int id)
+    {
+        return board.getIndex(id);
+    }
+
+    /**
+     * Returns the identifier of the node with a given index; this is
+     * the inverse of <code>indexOf</code>.
+     *
+     * @param index   an index in the range <code>0 .. size() - 1</code>
+     * @return        the identifier of the node with index <code>index</code>
+     */
+    public int idOf(int index)
+    {
+        return board.getId(index);
+    }
+
+    /**
+     * Tests whether a given node is accessible, that is whether it can
+     * appear on a path. Nodes that are not accessible are never
+     * returned by <code>neighbors</code>.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node with identifier <code>id</code>
+     *             is accessible; <code>false</code> otherwise
+     */
+    public boolean isAccessible(int id)
+    {
+        return board.isAccessible(board.getIndex(id));
+    }
+
     /**
      * Tests whether a given node contains a goal.
      *
@@ -115,7 +270,286 @@ public class Maze
      */
     public boolean hasGoal(int id)
     {
-        return board.getCell(id).isHeart();
+        return board.isHeart(board.getIndex(id));
+    }
+
+    /**
+     * Returns the identifiers of all nodes that contain a goal. A
+     * search that proceeds backwards from the goals can use them as
+     * starting points.
+     *
+     * @return   the identifiers of all nodes <code>id</code> such that
+     *           <code>hasGoal(id)</code>, in unspecified order
+     */
+    public int[] goals()
+    {
+        List<Integer> hearts = board.getHearts();
+        int[] goals = new int[hearts.size()];
+        int count = 0;
+        for (int index: hearts) {
+            int id = board.getId(index);
+            if (hasGoal(id))
+                goals[count++] = id;
+        }
+        return Arrays.copyOf(goals, count);
+    }
+
+    /**
+     * Tests whether some goal can be reached from a given node. This
+     * takes constant time, except the first time it is called on the
+     * maze and after a wall has changed, when an index of the
+     * connected components of the maze is built in parallel, in time
+     * linear in the size of the maze. Callers can use it to skip
+     * searches that cannot succeed.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node with identifier <code>id</code>
+     *             is accessible and there is a path from it to a goal;
+     *             <code>false</code> otherwise
+     */
+    public boolean reachesGoal(int id)
+    {
+        return components().reachesHeart(board.getIndex(id));
+    }
+
+    /**
+     * Tests whether there is a path between two given nodes. Like
+     * <code>reachesGoal</code>, this takes constant time once the
+     * index of the connected components of the maze has been built.
+     *
+     * @param id1   the identifier of a node in the maze
+     * @param id2   the identifier of a node in the maze
+     * @return      <code>true</code> if the nodes with identifiers
+     *              <code>id1</code> and <code>id2</code> are accessible and
+     *              connected by a path; <code>false</code> otherwise
+     */
+    public boolean isConnected(int id1, int id2)
+    {
+        return components().connected(board.getIndex(id1), board.getIndex(id2));
+    }
+
+    private ComponentIndex components()
+    {
+        ComponentIndex index = components;
+        if (index == null || index.getRevision() != board.getRevision()) {
+            index = new ComponentIndex(board);
+            components = index;
+        }
+        return index;
+    }
+
+    /**
+     * Opens a wall: makes a given inaccessible node accessible. Only
+     * brick walls can be opened; the solid walls at the border of the
+     * maze cannot. All registered wall listeners are notified of the
+     * change.
+     * <p>
+     * This method must not be called while a solver is searching the
+     * maze.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node with identifier <code>id</code>
+     *             was a brick wall and has been opened; <code>false</code>
+     *             otherwise, in which case the maze does not change
+     */
+    public boolean open(int id)
+    {
+        return setTile(id, Tile.BRICK, Tile.EMPTY);
+    }
+
+    /**
+     * Closes a node: makes a given accessible node a brick wall. Goal
+     * nodes and the start node cannot be closed. All registered wall
+     * listeners are notified of the change.
+     * <p>
+     * This method must not be called while a solver is searching the
+     * maze.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node with identifier <code>id</code>
+     *             was accessible and has been closed; <code>false</code>
+     *             otherwise, in which case the maze does not change
+     * @throws IllegalArgumentException   if <code>id</code> is the start node
+     */
+    public boolean close(int id)
+    {
+        if (id == start())
+            throw new IllegalArgumentException("The start node cannot be closed");
+        return setTile(id, Tile.EMPTY, Tile.BRICK);
+    }
+
+    private boolean setTile(int id, Tile from, Tile to)
+    {
+        if (!board.setTile(board.getIndex(id), from, to))
+            return false;
+        for (IntConsumer listener: wallListeners)
+            listener.accept(id);
+        return true;
+    }
+
+    /**
+     * Returns the number of times a node has been opened or closed
+     * since the maze was created. Clients that cache information about
+     * the walls of the maze can compare revisions to detect that the
+     * information is stale.
+     *
+     * @return   the number of changes to the walls of the maze so far
+     */
+    public int revision()
+    {
+        return board.getRevision();
+    }
+
+    /**
+     * Registers a listener that is notified of every node opened or
+     * closed, with the identifier of the node, right after the change.
+     *
+     * @param listener   the listener to be notified
+     */
+    public void addWallListener(IntConsumer listener)
+    {
+        wallListeners.add(listener);
+    }
+
+    /**
+     * Deregisters a listener previously registered with
+     * <code>addWallListener</code>.
+     *
+     * @param listener   the listener to be removed
+     */
+    public void removeWallListener(IntConsumer listener)
+    {
+        wallListeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of rows of the grid of cells of the maze.
+     * <p>
+     * This method belongs to the <em>coordinate API</em> of the maze,
+     * which exposes the position of nodes on the underlying grid.
+     * Solvers that only explore the maze as a graph never need it;
+     * solvers that exploit geometry, such as heuristic searches, opt
+     * in by using it.
+     *
+     * @return   the number of rows of the maze
+     */
+    public int rows()
+    {
+        return board.getRows();
+    }
+
+    /**
+     * Returns the number of columns of the grid of cells of the maze.
+     * This method belongs to the coordinate API.
+     *
+     * @return   the number of columns of the maze
+     */
+    public int cols()
+    {
+        return board.getCols();
+    }
+
+    /**
+     * Returns the row of a given node, counting from the top row
+     * <code>0</code>. This method belongs to the coordinate API.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the row of the node with identifier <code>id</code>
+     */
+    public int row(int id)
+    {
+        return board.getIndex(id) / board.getCols();
+    }
+
+    /**
+     * Returns the column of a given node, counting from the leftmost
+     * column <code>0</code>. This method belongs to the coordinate API.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the column of the node with identifier <code>id</code>
+     */
+    public int col(int id)
+    {
+        return board.getIndex(id) % board.getCols();
+    }
+
+    /**
+     * Returns the identifier of the node at a given position. This
+     * method belongs to the coordinate API.
+     *
+     * @param row   a row in <code>0 .. rows() - 1</code>
+     * @param col   a column in <code>0 .. cols() - 1</code>
+     * @return      the identifier of the node at <code>row</code>, <code>col</code>
+     */
+    public int idAt(int row, int col)
+    {
+        return board.getId(row*board.getCols() + col);
+    }
+
+    /**
+     * Tests whether the node at a given position is accessible. Unlike
+     * <code>idAt</code>, this method accepts any position, and returns
+     * <code>false</code> for positions outside the maze. This method
+     * belongs to the coordinate API.
+     *
+     * @param row   a row
+     * @param col   a column
+     * @return      <code>true</code> if <code>row</code>, <code>col</code> is
+     *              a position in the maze whose node is accessible;
+     *              <code>false</code> otherwise
+     */
+    public boolean isAccessible(int row, int col)
+    {
+        return board.isAccessible(row, col);
+    }
+
+    /**
+     * Tests whether the node at a given position contains a goal. This
+     * method belongs to the coordinate API.
+     *
+     * @param row   a row in <code>0 .. rows() - 1</code>
+     * @param col   a column in <code>0 .. cols() - 1</code>
+     * @return      <code>true</code> if the node at <code>row</code>,
+     *              <code>col</code> is a goal; <code>false</code> otherwise
+     */
+    public boolean hasGoal(int row, int col)
+    {
+        return board.isHeart(row*board.getCols() + col);
+    }
+
+    /**
+     * Returns a bitboard of the accessible nodes: a packed array with
+     * one bit per position on the grid, set if and only if the node at
+     * that position is accessible. Every row takes
+     * <code>words = (cols() + 63) / 64</code> consecutive elements of
+     * the array, and the bit of position <code>row</code>,
+     * <code>col</code> is bit <code>col % 64</code> of element
+     * <code>row*words + col/64</code>; bits beyond the last column are
+     * never set. The array is a new copy at every call. This method
+     * belongs to the coordinate API.
+     *
+     * @return   the bitboard of the accessible nodes of the maze
+     */
+    public long[] accessibleBitboard()
+    {
+        return board.getAccessibleBits();
+    }
+
+    /**
+     * Returns the Manhattan distance from a given node to the nearest
+     * goal, ignoring all walls. This is a lower bound on the number of
+     * steps of any path from the node to a goal, and thus an admissible
+     * and consistent heuristic for informed searches. This method
+     * belongs to the coordinate API.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the Manhattan distance from <code>id</code> to the
+     *             nearest goal; <code>Integer.MAX_VALUE</code> if the
+     *             maze has no goals
+     */
+    public int goalDistance(int id)
+    {
+        return board.getHeartDistance(board.getIndex(id));
     }
 
     /**
@@ -128,8 +562,10 @@ public class Maze
      *               nodes, and ends with a goal node;
      *               <code>false</code> otherwise
      */
-    boolean isValidPath(List<Integer> path)
+    public boolean isValidPath(List<Integer> path)
     {
+        if (path instanceof PathResult)
+            return isValidPath((PathResult) path);
         if (path.isEmpty())
             return false;
         ListIterator<Integer> iter = path.listIterator();
@@ -145,6 +581,29 @@ public class Maze
         return hasGoal(curr);
     }
 
+    /**
+     * Tests whether a compact path is a connected path from the start
+     * node to a goal. Since consecutive nodes in a
+     * <code>PathResult</code> are adjacent by construction, this only
+     * checks that every node on the path is accessible.
+     *
+     * @param path   a path in the maze
+     * @return       <code>true</code> if <code>path</code> begins with the
+     *               start node, only goes through accessible nodes, and
+     *               ends with a goal node; <code>false</code> otherwise
+     */
+    boolean isValidPath(PathResult path)
+    {
+        PrimitiveIterator.OfInt ids = path.ids();
+        if (ids.nextInt() != start())
+            return false;
+        while (ids.hasNext()) {
+            if (!isAccessible(ids.nextInt()))
+                return false;
+        }
+        return hasGoal(path.last());
+    }
+
     /**
      * Creates a new animated player, and place it on a given node.
      *
@@ -175,7 +634,9 @@ public class Maze
      * Moves an existing animated player to a given node. This method
      * doesn't do anything if the player doesn't exist or the given
      * node is not accessible. The given node need not be adjacent to
-     * the player's current node.
+     * the player's current node. If the calling thread is interrupted
+     * while pausing, the pause ends early and the interrupt status of
+     * the thread is set again, so that the caller can react to it.
      *
      * @param playerId   the identifier of an existing player
      * @param id         a node in the maze where the player is moved
@@ -188,7 +649,7 @@ public class Maze
         try {
             Thread.sleep(delay);
         } catch (InterruptedException e) {
-            System.out.println("Interrupted!");
+            Thread.currentThread().interrupt();
         }
         if (player != null)
             player.move(id);
@@ -201,6 +662,9 @@ public class Maze
      */
     void markPath(List<Integer> path)
     {
-        board.markPath(path);
+        if (path instanceof PathResult)
+            board.markPath((PathResult) path);
+        else
+            board.markPath(path);
     }
 }
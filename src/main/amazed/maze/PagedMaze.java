@@ -0,0 +1,610 @@
+package amazed.maze;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * <code>PagedMaze</code> is a <code>Maze</code> whose cells stay in a
+ * file, and are only brought into memory as the maze is explored, so
+ * that mazes much larger than the heap can be searched.
+ * <p>
+ * A paged map file splits the grid of cells into square pages of
+ * <code>PAGE_SIDE</code> by <code>PAGE_SIDE</code> cells, two bits
+ * per cell, stored one after the other. A page is read with a single
+ * positional read when a cell in it is first needed, and is kept in a
+ * cache of recently used pages, whose size is bounded; since searches
+ * mostly move between nearby cells, they keep hitting the same few
+ * pages. Finding a cached page takes no lock, so that parallel solvers
+ * do not contend on the cache; when the cache is full, a page not used
+ * recently is evicted, as chosen by the CLOCK algorithm. The file
+ * starts with a header of big-endian fields: the magic number
+ * <code>AMZP</code>, a format version, the side of the pages, the
+ * number of rows and columns, and the position and number of the
+ * indices of the cells with a goal, which are stored after the pages.
+ * Method <code>convert</code> writes a paged map from a text map in a
+ * single streaming pass, holding only one row of pages in memory.
+ * <p>
+ * Node identifiers are not stored: they are computed from the
+ * position of the node by a keyed Feistel permutation, and vice versa,
+ * in constant time and space. The key is random, and thus node
+ * identifiers are not persistent, as with every other maze, unless
+ * system property <code>amazed.seed</code> is set to a number: then
+ * the same map gets the same identifiers at every launch.
+ * <p>
+ * A paged maze supports the graph API and the coordinate API of
+ * <code>Maze</code>. Its walls cannot change, and it has no index of
+ * its connected components: methods <code>open</code>,
+ * <code>close</code>, <code>reachesGoal</code>,
+ * <code>isConnected</code>, and <code>withoutDeadEnds</code> throw
+ * <code>UnsupportedOperationException</code>. It is never animated.
+ * Solvers that allocate arrays of <code>size()</code> elements still
+ * need memory proportional to the size of the maze.
+ */
+
+public class PagedMaze extends Maze
+{
+    /**
+     * Side, in cells, of the square pages of a paged map.
+     */
+    public static final int PAGE_SIDE = 128;
+
+    /**
+     * Default maximum number of pages kept in memory.
+     */
+    public static final int DEFAULT_CACHED_PAGES = 16384;
+
+    // "AMZP"
+    private static final int MAGIC = 0x414d5a50;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 4 + 4 + 8 + 4;
+
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_SIDE);
+    private static final int PAGE_MASK = PAGE_SIDE - 1;
+    // bytes of a page, four cells per byte
+    private static final int PAGE_BYTES = PAGE_SIDE*PAGE_SIDE/4;
+
+    // tile of every 2-bit code
+    private static final Tile[] CODES = { Tile.EMPTY, Tile.BRICK, Tile.SOLID, Tile.HEART };
+    private static final int EMPTY = 0;
+    private static final int HEART = 3;
+    // tile ordinal --> 2-bit code
+    private static final int[] CODE_OF = new int[Tile.values().length];
+    static {
+        for (int code = 0; code < CODES.length; code++)
+            CODE_OF[CODES[code].ordinal()] = code;
+    }
+
+    private static final int FEISTEL_ROUNDS = 4;
+
+    private final FileChannel channel;
+    private final int nRows;
+    private final int nCols;
+    // number of pages in a row of pages
+    private final int pageCols;
+    // indices of the cells with a goal
+    private final int[] hearts;
+
+    // page number --> page in the cache; null if not cached
+    private final AtomicReferenceArray<Page> pages;
+    // page numbers of the cached pages, in the order swept by the clock
+    // hand; guarded by its own lock, with residentCount and hand
+    private final int[] resident;
+    private int residentCount;
+    private int hand;
+
+    // node identifiers: index i has identifier permute(i) - size(),
+    // where permute is a permutation of 0 .. 2*size() - 1 built from a
+    // Feistel network on `halfBits'-bit halves, by cycle walking
+    private final int halfBits;
+    private final long[] keys = new long[FEISTEL_ROUNDS];
+
+    /**
+     * Opens a paged map as a maze.
+     *
+     * @param filename   the name of the paged map file
+     * @param maxPages   the maximum number of pages kept in memory
+     * @throws IOException   if the file cannot be read, or is not a paged map
+     */
+    public PagedMaze(String filename, int maxPages)
+    throws IOException
+    {
+        if (maxPages < 1)
+            throw new IllegalArgumentException("At least one page must be cached");
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getShort() != VERSION || header.getInt() != PAGE_SIDE)
+                throw new IOException("Not a paged map: " + filename);
+            nRows = header.getInt();
+            nCols = header.getInt();
+            long heartsOffset = header.getLong();
+            int nHearts = header.getInt();
+            if (nRows < 0 || nCols < 0 || (long) nRows*nCols > Integer.MAX_VALUE/2 || nHearts < 0)
+                throw new IOException("Malformed paged map: " + filename);
+            ByteBuffer heartBytes = ByteBuffer.allocate(4*nHearts);
+            readFully(heartBytes, heartsOffset);
+            heartBytes.flip();
+            hearts = new int[nHearts];
+            for (int k = 0; k < nHearts; k++)
+                hearts[k] = heartBytes.getInt();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        pageCols = (nCols + PAGE_MASK) >>> PAGE_SHIFT;
+        int numPages = ((nRows + PAGE_MASK) >>> PAGE_SHIFT)*pageCols;
+        pages = new AtomicReferenceArray<>(numPages);
+        resident = new int[Math.max(1, Math.min(maxPages, numPages))];
+        long domain = 2L*nRows*nCols;
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(domain - 1, 3));
+        halfBits = (bits + 1) / 2;
+        Random random = IdPool.newRandom();
+        for (int k = 0; k < FEISTEL_ROUNDS; k++)
+            keys[k] = random.nextLong();
+        setAnimate(false);
+    }
+
+    /**
+     * Tests whether a file is a paged map.
+     *
+     * @param filename   the name of a file
+     * @return           <code>true</code> if the file starts like a paged
+     *                   map; <code>false</code> otherwise, also if it cannot
+     *                   be read
+     */
+    public static boolean isPaged(String filename)
+    {
+        try (FileChannel file = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && file.read(magic) >= 0)
+                ;
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts a text map into a paged map, reading the text map once
+     * and holding one row of pages in memory.
+     *
+     * @param mapFile     the name of the text map
+     * @param pagedFile   the name of the paged map to be written
+     * @throws IOException   if the text map cannot be read, or the paged
+     *                       map cannot be written
+     */
+    public static void convert(String mapFile, String pagedFile)
+    throws IOException
+    {
+        Path out = Paths.get(pagedFile);
+        Path temporary = out.resolveSibling(out.getFileName() + ".tmp");
+        try {
+            try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                     StandardOpenOption.TRUNCATE_EXISTING,
+                                                     StandardOpenOption.WRITE)) {
+                PageWriter writer = new PageWriter(file);
+                MapLoader.parse(mapFile, writer);
+                writer.finish();
+            }
+            Files.move(temporary, out, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // writes the pages of a map, one row of pages at a time, as the
+    // cells of the map arrive in row-major order
+    private static class PageWriter
+        implements MapLoader.Sink
+    {
+        private final FileChannel file;
+        private int nRows = -1;
+        private int nCols;
+        private int pageCols;
+        // pages of the current row of pages
+        private byte[] band;
+        private int bandRow;
+        private int[] hearts = new int[16];
+        private int nHearts;
+
+        PageWriter(FileChannel file)
+        {
+            this.file = file;
+        }
+
+        @Override
+        public void size(int rows, int cols)
+        throws IOException
+        {
+            if (nRows >= 0)
+                throw new IOException("The map declares its size more than once");
+            if ((long) rows*cols > Integer.MAX_VALUE/2)
+                throw new IOException("The map is too large: " + rows + "x" + cols);
+            nRows = rows;
+            nCols = cols;
+            pageCols = (cols + PAGE_MASK) >>> PAGE_SHIFT;
+            band = new byte[pageCols*PAGE_BYTES];
+        }
+
+        @Override
+        public void cell(int index, Tile tile)
+        throws IOException
+        {
+            int row = index / nCols, col = index % nCols;
+            while (row >>> PAGE_SHIFT > bandRow)
+                flushBand();
+            int code = CODE_OF[tile.ordinal()];
+            int k = ((row & PAGE_MASK) << PAGE_SHIFT) + (col & PAGE_MASK);
+            band[(col >>> PAGE_SHIFT)*PAGE_BYTES + (k >>> 2)] |= code << ((k & 3) << 1);
+            if (code == HEART) {
+                if (nHearts == hearts.length)
+                    hearts = Arrays.copyOf(hearts, 2*nHearts);
+                hearts[nHearts++] = index;
+            }
+        }
+
+        private void flushBand()
+        throws IOException
+        {
+            long offset = HEADER_SIZE + (long) bandRow*pageCols*PAGE_BYTES;
+            writeFully(file, ByteBuffer.wrap(band), offset);
+            Arrays.fill(band, (byte) 0);
+            bandRow += 1;
+        }
+
+        void finish()
+        throws IOException
+        {
+            if (nRows < 0)
+                throw new IOException("The map does not declare its size");
+            int pageRows = (nRows + PAGE_MASK) >>> PAGE_SHIFT;
+            while (bandRow < pageRows)
+                flushBand();
+            long heartsOffset = HEADER_SIZE + (long) pageRows*pageCols*PAGE_BYTES;
+            ByteBuffer trailer = ByteBuffer.allocate(4*nHearts);
+            for (int k = 0; k < nHearts; k++)
+                trailer.putInt(hearts[k]);
+            trailer.flip();
+            writeFully(file, trailer, heartsOffset);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putInt(PAGE_SIDE);
+            header.putInt(nRows).putInt(nCols).putLong(heartsOffset).putInt(nHearts);
+            header.flip();
+            writeFully(file, header, 0);
+        }
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer, long position)
+    throws IOException
+    {
+        while (buffer.hasRemaining())
+            position += file.write(buffer, position);
+    }
+
+    private void readFully(ByteBuffer buffer, long position)
+    throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Truncated paged map");
+            position += read;
+        }
+    }
+
+    // a cached page, with its reference bit for the clock
+    private static class Page
+    {
+        private final byte[] bytes;
+        // used since the clock hand last went past the page?
+        private volatile boolean referenced = true;
+
+        Page(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+    }
+
+    // page number `page', from the cache or else from the file
+    private byte[] page(int page)
+    {
+        Page cached = pages.get(page);
+        if (cached != null) {
+            // only write if needed, to keep the page's line shared
+            if (!cached.referenced)
+                cached.referenced = true;
+            return cached.bytes;
+        }
+        // read without holding the lock; two threads may read the same
+        // page at once, which is harmless
+        byte[] bytes = new byte[PAGE_BYTES];
+        try {
+            readFully(ByteBuffer.wrap(bytes), HEADER_SIZE + (long) page*PAGE_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (resident) {
+            cached = pages.get(page);
+            if (cached != null)
+                return cached.bytes;
+            if (residentCount < resident.length) {
+                resident[residentCount++] = page;
+            } else {
+                // evict the first page not used since the hand last
+                // went past it; threads still holding it can go on
+                // reading it
+                Page victim;
+                while ((victim = pages.get(resident[hand])).referenced) {
+                    victim.referenced = false;
+                    hand = (hand + 1) % resident.length;
+                }
+                pages.set(resident[hand], null);
+                resident[hand] = page;
+                hand = (hand + 1) % resident.length;
+            }
+            pages.set(page, new Page(bytes));
+        }
+        return bytes;
+    }
+
+    // 2-bit code of the tile of the cell at row, col
+    private int code(int row, int col)
+    {
+        byte[] page = page((row >>> PAGE_SHIFT)*pageCols + (col >>> PAGE_SHIFT));
+        int k = ((row & PAGE_MASK) << PAGE_SHIFT) + (col & PAGE_MASK);
+        return (page[k >>> 2] >>> ((k & 3) << 1)) & 3;
+    }
+
+    private boolean accessible(int row, int col)
+    {
+        int code = code(row, col);
+        return code == EMPTY || code == HEART;
+    }
+
+    private long round(long half, int k)
+    {
+        long z = (half ^ keys[k]) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (z ^ (z >>> 31)) & ((1L << halfBits) - 1);
+    }
+
+    private long encrypt(long x)
+    {
+        long mask = (1L << halfBits) - 1;
+        long left = x >>> halfBits, right = x & mask;
+        for (int k = 0; k < FEISTEL_ROUNDS; k++) {
+            long next = left ^ round(right, k);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long decrypt(long x)
+    {
+        long mask = (1L << halfBits) - 1;
+        long left = x >>> halfBits, right = x & mask;
+        for (int k = FEISTEL_ROUNDS - 1; k >= 0; k--) {
+            long previous = right ^ round(left, k);
+            right = left;
+            left = previous;
+        }
+        return (left << halfBits) | right;
+    }
+
+    @Override
+    public int idOf(int index)
+    {
+        long domain = 2L*size();
+        long x = encrypt(index);
+        while (x >= domain)
+            x = encrypt(x);
+        return (int) (x - size());
+    }
+
+    @Override
+    public int indexOf(int id)
+    {
+        long domain = 2L*size();
+        long x = (long) id + size();
+        if (x < 0 || x >= domain)
+            throw new IllegalArgumentException("No node with identifier " + id);
+        x = decrypt(x);
+        while (x >= domain)
+            x = decrypt(x);
+        if (x >= size())
+            throw new IllegalArgumentException("No node with identifier " + id);
+        return (int) x;
+    }
+
+    @Override
+    public int start()
+    {
+        return idOf(0);
+    }
+
+    @Override
+    public int neighbors(int id, int[] out)
+    {
+        int index = indexOf(id);
+        int row = index / nCols, col = index % nCols;
+        int count = 0;
+        if (row > 0 && accessible(row - 1, col))
+            out[count++] = idOf(index - nCols);
+        if (row < nRows - 1 && accessible(row + 1, col))
+            out[count++] = idOf(index + nCols);
+        if (col > 0 && accessible(row, col - 1))
+            out[count++] = idOf(index - 1);
+        if (col < nCols - 1 && accessible(row, col + 1))
+            out[count++] = idOf(index + 1);
+        return count;
+    }
+
+    @Override
+    public void forEachNeighbor(int id, IntConsumer action)
+    {
+        int index = indexOf(id);
+        int row = index / nCols, col = index % nCols;
+        if (row > 0 && accessible(row - 1, col))
+            action.accept(idOf(index - nCols));
+        if (row < nRows - 1 && accessible(row + 1, col))
+            action.accept(idOf(index + nCols));
+        if (col > 0 && accessible(row, col - 1))
+            action.accept(idOf(index - 1));
+        if (col < nCols - 1 && accessible(row, col + 1))
+            action.accept(idOf(index + 1));
+    }
+
+    @Override
+    public int size()
+    {
+        return nRows*nCols;
+    }
+
+    @Override
+    public boolean isAccessible(int id)
+    {
+        int index = indexOf(id);
+        return accessible(index / nCols, index % nCols);
+    }
+
+    @Override
+    public boolean hasGoal(int id)
+    {
+        int index = indexOf(id);
+        return code(index / nCols, index % nCols) == HEART;
+    }
+
+    @Override
+    public int[] goals()
+    {
+        int[] goals = new int[hearts.length];
+        for (int k = 0; k < hearts.length; k++)
+            goals[k] = idOf(hearts[k]);
+        return goals;
+    }
+
+    @Override
+    public boolean reachesGoal(int id)
+    {
+        throw new UnsupportedOperationException("Paged mazes have no index of their components");
+    }
+
+    @Override
+    public boolean isConnected(int id1, int id2)
+    {
+        throw new UnsupportedOperationException("Paged mazes have no index of their components");
+    }
+
+    @Override
+    public boolean open(int id)
+    {
+        throw new UnsupportedOperationException("The walls of a paged maze cannot change");
+    }
+
+    @Override
+    public boolean close(int id)
+    {
+        throw new UnsupportedOperationException("The walls of a paged maze cannot change");
+    }
+
+    @Override
+    public int revision()
+    {
+        return 0;
+    }
+
+    @Override
+    public Maze withoutDeadEnds()
+    {
+        throw new UnsupportedOperationException("Paged mazes cannot be filled");
+    }
+
+    @Override
+    public int rows()
+    {
+        return nRows;
+    }
+
+    @Override
+    public int cols()
+    {
+        return nCols;
+    }
+
+    @Override
+    public int row(int id)
+    {
+        return indexOf(id) / nCols;
+    }
+
+    @Override
+    public int col(int id)
+    {
+        return indexOf(id) % nCols;
+    }
+
+    @Override
+    public int idAt(int row, int col)
+    {
+        return idOf(row*nCols + col);
+    }
+
+    @Override
+    public boolean isAccessible(int row, int col)
+    {
+        return 0 <= row && row < nRows && 0 <= col && col < nCols && accessible(row, col);
+    }
+
+    @Override
+    public boolean hasGoal(int row, int col)
+    {
+        return code(row, col) == HEART;
+    }
+
+    @Override
+    public long[] accessibleBitboard()
+    {
+        int words = (nCols + 63) >>> 6;
+        long[] bits = new long[nRows*words];
+        for (int row = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++) {
+                if (accessible(row, col))
+                    bits[row*words + (col >>> 6)] |= 1L << col;
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public int goalDistance(int id)
+    {
+        int index = indexOf(id);
+        int row = index / nCols, col = index % nCols;
+        int distance = Integer.MAX_VALUE;
+        for (int heart: hearts)
+            distance = Math.min(distance, Math.abs(heart / nCols - row) + Math.abs(heart % nCols - col));
+        return distance;
+    }
+
+    // paths are not displayed
+    @Override
+    void markPath(List<Integer> path)
+    {
+    }
+}
@@ -0,0 +1,215 @@
+package amazed.maze;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * <code>PathResult</code> is a compact representation of a path in a
+ * maze.
+ * <p>
+ * A path is stored as its initial node followed by one 2-bit
+ * direction code per step, packed 32 to a <code>long</code>; thus, a
+ * path with a million steps takes about 250 kilobytes. Node
+ * identifiers are only computed when the path is traversed, by
+ * iterating over it or by calling <code>ids</code>.
+ * <p>
+ * <code>PathResult</code> is an immutable <code>List</code> of node
+ * identifiers, so that it can be returned by solvers wherever a list
+ * is expected. Iteration takes constant time per node, whereas random
+ * access with <code>get</code> takes time linear in the position.
+ */
+
+public final class PathResult extends AbstractList<Integer>
+{
+    private static final int CODES_PER_WORD = 32;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Maze maze;
+    // number of columns of the maze, to step between indices
+    private final int cols;
+    // index of the initial node
+    private final int first;
+    // index of the final node
+    private final int last;
+    // number of nodes on the path
+    private final int size;
+    // direction codes (ordinals of Direction), 2 bits per step
+    private final long[] steps;
+
+    private PathResult(Maze maze, int first, int last, int size, long[] steps)
+    {
+        this.maze = maze;
+        this.cols = maze.cols();
+        this.first = first;
+        this.last = last;
+        this.size = size;
+        this.steps = steps;
+    }
+
+    /**
+     * Creates a path from the indices of its nodes (see
+     * {@link Maze#indexOf(int)}).
+     *
+     * @param maze      the maze the path belongs to
+     * @param indices   the indices of the nodes on the path, in order;
+     *                  every two consecutive nodes must be adjacent
+     * @return          the compact path through <code>indices</code>
+     * @throws IllegalArgumentException   if <code>indices</code> is empty, or
+     *                                    if two consecutive nodes are not adjacent
+     */
+    public static PathResult of(Maze maze, int[] indices)
+    {
+        if (indices.length == 0)
+            throw new IllegalArgumentException("Empty path");
+        int cols = maze.cols();
+        long[] steps = new long[(indices.length - 1 + CODES_PER_WORD - 1) / CODES_PER_WORD];
+        for (int k = 1; k < indices.length; k++) {
+            long code = step(cols, indices[k - 1], indices[k], maze).ordinal();
+            int step = k - 1;
+            steps[step / CODES_PER_WORD] |= code << (2 * (step % CODES_PER_WORD));
+        }
+        return new PathResult(maze, indices[0], indices[indices.length - 1], indices.length, steps);
+    }
+
+    /**
+     * Returns the identifier of the initial node on the path.
+     *
+     * @return   the identifier of the first node
+     */
+    public int first()
+    {
+        return maze.idOf(first);
+    }
+
+    /**
+     * Returns the identifier of the final node on the path.
+     *
+     * @return   the identifier of the last node
+     */
+    public int last()
+    {
+        return maze.idOf(last);
+    }
+
+    /**
+     * Returns the number of nodes on the path, which is one more than
+     * the number of steps.
+     *
+     * @return   the number of nodes on the path
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the identifier of the node at a given position on the
+     * path. This takes time linear in <code>position</code>; use
+     * <code>ids</code> to traverse the whole path.
+     *
+     * @param position   a position in <code>0 .. size() - 1</code>
+     * @return           the identifier of the node at <code>position</code>
+     */
+    @Override
+    public Integer get(int position)
+    {
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        PrimitiveIterator.OfInt iter = indices();
+        int index = iter.nextInt();
+        for (int k = 0; k < position; k++)
+            index = iter.nextInt();
+        return maze.idOf(index);
+    }
+
+    @Override
+    public Iterator<Integer> iterator()
+    {
+        return ids();
+    }
+
+    /**
+     * Returns an iterator over the identifiers of the nodes on the
+     * path, from first to last, that does not box them.
+     *
+     * @return   an iterator over the node identifiers on the path
+     */
+    public PrimitiveIterator.OfInt ids()
+    {
+        PrimitiveIterator.OfInt indices = indices();
+        return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext()
+            {
+                return indices.hasNext();
+            }
+
+            @Override
+            public int nextInt()
+            {
+                return maze.idOf(indices.nextInt());
+            }
+        };
+    }
+
+    // iterator over the indices of the nodes on the path
+    PrimitiveIterator.OfInt indices()
+    {
+        return new PrimitiveIterator.OfInt() {
+            private int position = 0;
+            private int index = first;
+
+            @Override
+            public boolean hasNext()
+            {
+                return position < size;
+            }
+
+            @Override
+            public int nextInt()
+            {
+                if (position >= size)
+                    throw new NoSuchElementException();
+                if (position > 0) {
+                    int step = position - 1;
+                    int code = (int) (steps[step / CODES_PER_WORD] >>> (2 * (step % CODES_PER_WORD))) & 3;
+                    index = step(index, DIRECTIONS[code]);
+                }
+                position += 1;
+                return index;
+            }
+        };
+    }
+
+    // direction of the step from index `from' to adjacent index `to'
+    private static Direction step(int cols, int from, int to, Maze maze)
+    {
+        if (to == from - cols)
+            return Direction.NORTH;
+        if (to == from + cols)
+            return Direction.SOUTH;
+        if (to == from - 1 && from % cols != 0)
+            return Direction.WEST;
+        if (to == from + 1 && to % cols != 0)
+            return Direction.EAST;
+        throw new IllegalArgumentException("Nodes " + maze.idOf(from) + " and " + maze.idOf(to) + " are not adjacent");
+    }
+
+    // index reached from index `index' by a step in `direction'
+    private int step(int index, Direction direction)
+    {
+        switch (direction) {
+        case NORTH:
+            return index - cols;
+        case SOUTH:
+            return index + cols;
+        case WEST:
+            return index - 1;
+        default:
+            return index + 1;
+        }
+    }
+}
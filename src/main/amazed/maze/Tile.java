@@ -37,4 +37,19 @@ public enum Tile
     {
         return text.charValue();
     }
+
+    boolean isAccessible()
+    {
+        return this == EMPTY || this == HEART;
+    }
+
+    // tile of a cell of this tile on a marked path
+    Tile marked()
+    {
+        if (this == HEART)
+            return FOUND;
+        if (this == EMPTY)
+            return MARKED;
+        return this;
+    }
 }
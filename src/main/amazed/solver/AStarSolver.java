@@ -0,0 +1,107 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <code>AStarSolver</code> implements a solver for <code>Maze</code>
+ * objects using a single-thread A* search.
+ * <p>
+ * Unlike the other solvers, <code>AStarSolver</code> uses the
+ * coordinate API of the maze: nodes are expanded in order of
+ * <code>g + h</code>, where <code>g</code> is the number of steps
+ * from the start node and <code>h</code> is the Manhattan distance
+ * to the nearest goal, as returned by
+ * {@link amazed.maze.Maze#goalDistance(int)}. Ties are broken in
+ * favor of the node closest to a goal. When the goals lie in a clear
+ * direction from the start, the search expands few nodes away from
+ * that direction.
+ * <p>
+ * The open set is a binary heap of primitive values, in which a node
+ * is added again whenever a shorter path to it is found. Since the
+ * heuristic is consistent, the first time a node is removed from the
+ * heap it is reached through a shortest path: at that time it is
+ * closed and its predecessor recorded. Thus, the path returned by
+ * <code>compute</code> is a shortest path to a goal.
+ */
+
+public class AStarSolver extends SequentialSolver
+{
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public AStarSolver(Maze maze)
+    {
+        super(maze);
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        return aStarSearch();
+    }
+
+    private List<Integer> aStarSearch()
+    {
+        if (maze.goals().length == 0)
+            return null;
+        int player = maze.newPlayer(start);
+        // node index --> length of the shortest path found so far
+        int[] distance = new int[maze.size()];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        MinHeap open = new MinHeap();
+
+        int root = maze.indexOf(start);
+        distance[root] = 0;
+        open.add(key(0, maze.goalDistance(start)), entry(root, root));
+        while (!open.isEmpty() && !isCancelled()) {
+            long entry = open.poll();
+            int current = (int) (entry >>> 32);
+            // a node is closed when its predecessor is recorded
+            if (!predecessor.putIfAbsent(current, (int) entry))
+                continue;
+            int id = maze.idOf(current);
+            maze.move(player, id);
+            if (maze.hasGoal(id))
+                return pathFromTo(start, id);
+            int g = distance[current] + 1;
+            for (int nb: maze.neighbors(id)) {
+                int index = maze.indexOf(nb);
+                if (g < distance[index] && !predecessor.contains(index)) {
+                    distance[index] = g;
+                    open.add(key(g, maze.goalDistance(nb)), entry(index, current));
+                }
+            }
+        }
+        // all reachable nodes explored, no goal found
+        return null;
+    }
+
+    // orders by g + h, then by h
+    private static long key(int g, int h)
+    {
+        return ((long) (g + h) << 32) | h;
+    }
+
+    // heap value: a node together with the predecessor it is reached from
+    private static long entry(int index, int predecessor)
+    {
+        return ((long) index << 32) | (predecessor & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,185 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.PathResult;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>BidirectionalSolver</code> implements a solver for
+ * <code>Maze</code> objects that searches forward from the start node
+ * and backward from all goal nodes at the same time.
+ * <p>
+ * The two searches are breadth-first, and run as two tasks that can
+ * be executed by different workers of the pool. Each search records
+ * the nodes it reaches in its own <code>PredecessorArray</code>:
+ * recording a predecessor claims a node for that search. As soon as
+ * one search claims a node already claimed by the other search, the
+ * two frontiers have met and both searches stop. The path to a goal
+ * consists of the forward path from the start node to the meeting
+ * node, followed by the backward path from the meeting node to a
+ * goal.
+ * <p>
+ * Since the two searches advance independently, the path found is
+ * not necessarily a shortest one.
+ */
+
+public class BidirectionalSolver extends SequentialSolver
+{
+    // the searches have not met (yet)
+    private static final int NOT_MET = -1;
+
+    // index of the node where the two searches met; NOT_MET if none
+    private final AtomicInteger meeting = new AtomicInteger(NOT_MET);
+
+    // predecessors in the forward search are in the inherited `predecessor';
+    // "predecessors" in the backward search point towards a goal
+    private PredecessorArray successor;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node and from the goal nodes.
+     *
+     * @param maze   the maze to be searched
+     */
+    public BidirectionalSolver(Maze maze)
+    {
+        super(maze);
+    }
+
+    /**
+     * Initializes the predecessors of both searches.
+     */
+    @Override
+    protected void initStructures()
+    {
+        predecessor = new PredecessorArray(maze.size());
+        successor = new PredecessorArray(maze.size());
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        return bidirectionalSearch();
+    }
+
+    private List<Integer> bidirectionalSearch()
+    {
+        int[] goals = maze.goals();
+        if (goals.length == 0)
+            return null;
+        if (maze.hasGoal(start))
+            return pathFromTo(start, start);
+
+        // the initial nodes of each search are their own predecessors
+        int root = maze.indexOf(start);
+        predecessor.putIfAbsent(root, root);
+        for (int k = 0; k < goals.length; k++) {
+            goals[k] = maze.indexOf(goals[k]);
+            successor.putIfAbsent(goals[k], goals[k]);
+        }
+
+        Search forward = new Search(predecessor, successor, new int[] { root });
+        Search backward = new Search(successor, predecessor, goals);
+        backward.fork();
+        forward.invoke();
+        backward.join();
+
+        int met = meeting.get();
+        if (met == NOT_MET)
+            return null;
+        return PathResult.of(maze, pathThrough(root, met));
+    }
+
+    // path from `root' to `met' in the forward search,
+    // followed by the path from `met' to a goal in the backward search
+    private int[] pathThrough(int root, int met)
+    {
+        int[] head = predecessor.path(root, met);
+        int tailLength = 0;
+        for (int current = met; successor.get(current) != current; tailLength++)
+            current = successor.get(current);
+        int[] path = Arrays.copyOf(head, head.length + tailLength);
+        int current = met;
+        for (int k = head.length; k < path.length; k++) {
+            current = successor.get(current);
+            path[k] = current;
+        }
+        return path;
+    }
+
+    /**
+     * Breadth-first search in one direction, as a subtask of the
+     * solver.
+     */
+    private class Search extends RecursiveAction
+    {
+        // nodes claimed by this search
+        private final PredecessorArray mine;
+        // nodes claimed by the search in the opposite direction
+        private final PredecessorArray theirs;
+        // queue of nodes to be expanded
+        private int[] queue;
+        private int head = 0;
+        private int tail;
+
+        Search(PredecessorArray mine, PredecessorArray theirs, int[] initial)
+        {
+            this.mine = mine;
+            this.theirs = theirs;
+            this.queue = Arrays.copyOf(initial, Math.max(16, initial.length));
+            this.tail = initial.length;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int player = maze.newPlayer(maze.idOf(queue[0]));
+            while (head < tail && meeting.get() == NOT_MET && !BidirectionalSolver.this.isCancelled()) {
+                int current = queue[head++];
+                int id = maze.idOf(current);
+                maze.move(player, id);
+                for (int nb: maze.neighbors(id)) {
+                    int index = maze.indexOf(nb);
+                    if (!mine.putIfAbsent(index, current))
+                        continue;
+                    // claiming before checking guarantees that, of two
+                    // searches claiming the same node, at least one sees
+                    // the claim of the other
+                    if (theirs.contains(index)) {
+                        meeting.compareAndSet(NOT_MET, index);
+                        return;
+                    }
+                    enqueue(index);
+                }
+            }
+        }
+
+        private void enqueue(int index)
+        {
+            if (tail == queue.length) {
+                // reclaim the space of expanded nodes before growing
+                System.arraycopy(queue, head, queue, 0, tail - head);
+                tail -= head;
+                head = 0;
+                if (tail > queue.length / 2)
+                    queue = Arrays.copyOf(queue, 2 * queue.length);
+            }
+            queue[tail++] = index;
+        }
+    }
+}
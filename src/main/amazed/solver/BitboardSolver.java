@@ -0,0 +1,200 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.PathResult;
+
+import java.util.List;
+
+/**
+ * <code>BitboardSolver</code> implements a solver for
+ * <code>Maze</code> objects using a bit-parallel breadth-first flood
+ * fill.
+ * <p>
+ * The solver takes the bitboard of the accessible nodes of the maze
+ * (see {@link amazed.maze.Maze#accessibleBitboard()}), where every row
+ * is packed into <code>long</code> words, one bit per cell. The
+ * frontier of the search is a bitboard too: the next frontier is the
+ * current one shifted one step north, south, west and east, which
+ * takes a few shift, and, or operations per word for 64 cells at a
+ * time, masked by the accessible cells not reached yet. Only the rows
+ * next to a row of the current frontier are computed at every step.
+ * The search stops at the first frontier that contains a goal.
+ * <p>
+ * The step at which every cell is first reached is recorded when its
+ * bit is set, so that the path can be traced back from the goal to
+ * the start node, each time to a neighbor reached one step earlier.
+ * Thus, the path returned is a shortest path to a goal. The search is
+ * not animated. <code>BitboardSolver</code> uses the coordinate API
+ * of the maze; its internal arrays are indexed by grid position,
+ * <code>row*cols + col</code>.
+ */
+
+public class BitboardSolver extends SequentialSolver
+{
+    private int rows;
+    private int cols;
+    // words per row
+    private int words;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public BitboardSolver(Maze maze)
+    {
+        super(maze);
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        return floodFill();
+    }
+
+    private List<Integer> floodFill()
+    {
+        rows = maze.rows();
+        cols = maze.cols();
+        words = (cols + 63) >>> 6;
+        long[] open = maze.accessibleBitboard();
+        long[] goals = new long[rows*words];
+        for (int goal: maze.goals())
+            goals[maze.row(goal)*words + (maze.col(goal) >>> 6)] |= 1L << maze.col(goal);
+        maze.newPlayer(start);
+
+        long[] reached = new long[rows*words];
+        long[] frontier = new long[rows*words];
+        long[] next = new long[rows*words];
+        // grid position --> step at which it is first reached; only
+        // meaningful for positions whose bit is set in `reached'
+        int[] step = new int[rows*cols];
+        // rows with a non-empty frontier, and rows of the next frontier
+        int[] active = new int[rows];
+        int[] nextActive = new int[rows];
+        boolean[] candidate = new boolean[rows];
+
+        int startRow = maze.row(start), startCol = maze.col(start);
+        int startWord = startRow*words + (startCol >>> 6);
+        if ((open[startWord] & (1L << startCol)) == 0)
+            return null;
+        frontier[startWord] = reached[startWord] = 1L << startCol;
+        if ((goals[startWord] & frontier[startWord]) != 0)
+            return tracePath(startRow*cols + startCol, step, reached);
+        int activeCount = 1;
+        active[0] = startRow;
+
+        for (int depth = 1; activeCount > 0 && !isCancelled(); depth++) {
+            // rows that the next frontier can reach
+            int candidates = 0;
+            for (int k = 0; k < activeCount; k++) {
+                for (int row = Math.max(0, active[k] - 1); row <= Math.min(rows - 1, active[k] + 1); row++) {
+                    if (!candidate[row]) {
+                        candidate[row] = true;
+                        nextActive[candidates++] = row;
+                    }
+                }
+            }
+            int nextCount = 0, goal = -1;
+            for (int k = 0; k < candidates; k++) {
+                int row = nextActive[k];
+                candidate[row] = false;
+                int base = row*words;
+                long any = 0;
+                for (int w = 0; w < words; w++) {
+                    int word = base + w;
+                    long current = frontier[word];
+                    // west and east neighbors, carrying bits across words
+                    long spread = (current << 1) | (current >>> 1);
+                    if (w > 0)
+                        spread |= frontier[word - 1] >>> 63;
+                    if (w < words - 1)
+                        spread |= frontier[word + 1] << 63;
+                    // north and south neighbors
+                    if (row > 0)
+                        spread |= frontier[word - words];
+                    if (row < rows - 1)
+                        spread |= frontier[word + words];
+                    long fresh = spread & open[word] & ~reached[word];
+                    next[word] = fresh;
+                    if (fresh == 0)
+                        continue;
+                    any |= fresh;
+                    reached[word] |= fresh;
+                    // record the step of every newly reached cell
+                    for (long bits = fresh; bits != 0; bits &= bits - 1)
+                        step[row*cols + (w << 6) + Long.numberOfTrailingZeros(bits)] = depth;
+                    long hit = fresh & goals[word];
+                    if (hit != 0 && goal < 0)
+                        goal = row*cols + (w << 6) + Long.numberOfTrailingZeros(hit);
+                }
+                if (any != 0)
+                    nextActive[nextCount++] = row;
+            }
+            if (goal >= 0)
+                return tracePath(goal, step, reached);
+            // clear the old frontier, and swap it with the new one
+            for (int k = 0; k < activeCount; k++)
+                clearRow(frontier, active[k]);
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+            int[] swapRows = active;
+            active = nextActive;
+            nextActive = swapRows;
+            activeCount = nextCount;
+        }
+        // all reachable cells flooded, no goal found
+        return null;
+    }
+
+    private void clearRow(long[] bitboard, int row)
+    {
+        for (int w = row*words; w < (row + 1)*words; w++)
+            bitboard[w] = 0;
+    }
+
+    // goes back from `goal', each time to a neighbor reached one step earlier
+    private PathResult tracePath(int goal, int[] step, long[] reached)
+    {
+        int length = step[goal];
+        int[] path = new int[length + 1];
+        int current = goal;
+        for (int k = length; k > 0; k--) {
+            path[k] = indexAt(current);
+            int row = current / cols, col = current % cols;
+            if (row > 0 && reachedAt(reached, row - 1, col) && step[current - cols] == k - 1)
+                current -= cols;
+            else if (row < rows - 1 && reachedAt(reached, row + 1, col) && step[current + cols] == k - 1)
+                current += cols;
+            else if (col > 0 && reachedAt(reached, row, col - 1) && step[current - 1] == k - 1)
+                current -= 1;
+            else
+                current += 1;
+        }
+        path[0] = indexAt(current);
+        return PathResult.of(maze, path);
+    }
+
+    private boolean reachedAt(long[] reached, int row, int col)
+    {
+        return (reached[row*words + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    private int indexAt(int position)
+    {
+        return maze.indexOf(maze.idAt(position / cols, position % cols));
+    }
+}
@@ -0,0 +1,179 @@
+package amazed.solver;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>BranchScope</code> runs the branches of a search on threads of
+ * their own, with the discipline of structured concurrency: every
+ * branch is forked inside the scope, the owner of the scope waits in
+ * <code>join</code> until all branches have terminated, and method
+ * <code>shutdown</code> cancels all branches at once &mdash; typically
+ * as soon as one of them has found a goal.
+ * <p>
+ * Branches run on virtual threads when the Java runtime supports them
+ * (Java 21 or later); then, a branch that blocks, for instance in the
+ * pauses of an animation, does not hold on to a platform thread, and
+ * thousands of branches can make progress at the same time. On older
+ * runtimes, branches run on daemon platform threads, and at most
+ * <code>PLATFORM_THREADS</code> of them are live at any time: method
+ * <code>fork</code> returns <code>false</code> when a branch cannot be
+ * started, and the caller should continue the branch itself.
+ * <p>
+ * Cancellation is cooperative: <code>shutdown</code> interrupts all
+ * live branches, which should check <code>isShutdown</code>
+ * regularly and return when it holds.
+ */
+
+class BranchScope implements AutoCloseable
+{
+    // maximum number of live branches on platform threads
+    static final int PLATFORM_THREADS = 256;
+
+    // factory of virtual threads; null if the runtime has none
+    private static final ThreadFactory VIRTUAL = virtualThreadFactory();
+
+    private static final AtomicInteger nThreads = new AtomicInteger();
+
+    private final ThreadFactory factory;
+    private final int maxThreads;
+
+    // live branches; guarded by this
+    private final Set<Thread> threads = new HashSet<>();
+    private volatile boolean shutdown = false;
+    private volatile Throwable failure;
+
+    BranchScope()
+    {
+        if (VIRTUAL != null) {
+            factory = VIRTUAL;
+            maxThreads = Integer.MAX_VALUE;
+        } else {
+            factory = task -> {
+                Thread thread = new Thread(task, "branch-" + nThreads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+            maxThreads = PLATFORM_THREADS;
+        }
+    }
+
+    // Thread.ofVirtual().factory(), looked up reflectively so that
+    // the class still compiles and runs on runtimes without it
+    private static ThreadFactory virtualThreadFactory()
+    {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                .getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // do branches run on virtual threads?
+    static boolean isVirtual()
+    {
+        return VIRTUAL != null;
+    }
+
+    // starts `branch' on a new thread; returns false, without starting
+    // it, if the scope is shut down or has too many live branches
+    synchronized boolean fork(Runnable branch)
+    {
+        if (shutdown || threads.size() >= maxThreads)
+            return false;
+        Thread thread = factory.newThread(() -> {
+            try {
+                branch.run();
+            } catch (Throwable e) {
+                if (failure == null)
+                    failure = e;
+                shutdown();
+            } finally {
+                terminated(Thread.currentThread());
+            }
+        });
+        threads.add(thread);
+        thread.start();
+        return true;
+    }
+
+    private synchronized void terminated(Thread thread)
+    {
+        threads.remove(thread);
+        if (threads.isEmpty())
+            notifyAll();
+    }
+
+    // cancels all live branches, and prevents new ones from starting
+    void shutdown()
+    {
+        shutdown = true;
+        synchronized (this) {
+            for (Thread thread: threads) {
+                if (thread != Thread.currentThread())
+                    thread.interrupt();
+            }
+        }
+    }
+
+    boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    // the first exception thrown by a branch; null if none
+    Throwable failure()
+    {
+        return failure;
+    }
+
+    // waits until all branches have terminated; when called from a
+    // ForkJoinPool worker, the pool may start a spare worker meanwhile
+    void join()
+        throws InterruptedException
+    {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block()
+                throws InterruptedException
+            {
+                synchronized (BranchScope.this) {
+                    while (!threads.isEmpty())
+                        BranchScope.this.wait();
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable()
+            {
+                synchronized (BranchScope.this) {
+                    return threads.isEmpty();
+                }
+            }
+        });
+    }
+
+    // shuts the scope down, and waits until all branches have terminated
+    @Override
+    public void close()
+    {
+        shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
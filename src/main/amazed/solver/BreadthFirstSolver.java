@@ -0,0 +1,289 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>BreadthFirstSolver</code> implements a solver for
+ * <code>Maze</code> objects using a level-synchronous parallel
+ * breadth-first search.
+ * <p>
+ * The search proceeds one level at a time: all nodes at distance
+ * <code>d</code> from the start node form the frontier from which
+ * the nodes at distance <code>d + 1</code> are found. Every level is
+ * split into chunks that are expanded in parallel by subtasks running
+ * in the same <code>ForkJoinPool</code> as the solver.
+ * <p>
+ * A level is expanded either <em>top-down</em>, where every frontier
+ * node claims its unvisited neighbors, or <em>bottom-up</em>, where
+ * every unvisited node looks for a neighbor in the frontier. The
+ * solver switches to bottom-up expansion when the frontier becomes
+ * large compared to the unvisited part of the maze, and back to
+ * top-down expansion when the frontier shrinks again.
+ * <p>
+ * Since all nodes at distance <code>d</code> are visited before any
+ * node at distance <code>d + 1</code>, the path returned by
+ * <code>compute</code> is a shortest path to a goal.
+ */
+
+public class BreadthFirstSolver extends SequentialSolver
+{
+    // switch to bottom-up when frontier > unvisited / ALPHA
+    private static final int ALPHA = 14;
+    // switch back to top-down when frontier < size / BETA
+    private static final int BETA = 24;
+
+    // number of frontier nodes expanded by a top-down subtask
+    private static final int TOP_DOWN_GRAIN = 128;
+    // number of nodes scanned by a bottom-up subtask
+    private static final int BOTTOM_UP_GRAIN = 4096;
+
+    // node index --> distance from start; -1 if not visited yet
+    private int[] level;
+    // index of a goal node found in the earliest level; -1 if none
+    private final AtomicInteger goal = new AtomicInteger(-1);
+    // does the search stop at the first level with a goal?
+    private final boolean stopAtGoal;
+    // indices of all goal nodes found so far
+    private final Queue<Integer> goals = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public BreadthFirstSolver(Maze maze)
+    {
+        this(maze, true);
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node, either up to the nearest goal or through all nodes
+     * reachable from the start node.
+     *
+     * @param maze         the maze to be searched
+     * @param stopAtGoal   if <code>true</code>, the search stops at the
+     *                     first level that contains a goal; otherwise
+     *                     it explores all reachable nodes
+     */
+    protected BreadthFirstSolver(Maze maze, boolean stopAtGoal)
+    {
+        super(maze);
+        this.stopAtGoal = stopAtGoal;
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        return breadthFirstSearch();
+    }
+
+    private List<Integer> breadthFirstSearch()
+    {
+        int size = maze.size();
+        level = new int[size];
+        Arrays.fill(level, -1);
+
+        // the start node is its own predecessor, so that no other node claims it
+        int root = maze.indexOf(start);
+        predecessor.putIfAbsent(root, root);
+        level[root] = 0;
+        if (maze.hasGoal(start)) {
+            maze.move(maze.newPlayer(start), start);
+            goal.set(root);
+            goals.add(root);
+            if (stopAtGoal)
+                return pathFromTo(start, start);
+        }
+
+        int[] frontier = { root };
+        int depth = 0;
+        long visitedCount = 1;
+        boolean bottomUp = false;
+        while (frontier.length > 0 && !stopped()) {
+            long unvisited = size - visitedCount;
+            if (!bottomUp && frontier.length > unvisited / ALPHA)
+                bottomUp = true;
+            else if (bottomUp && frontier.length < size / BETA)
+                bottomUp = false;
+            if (bottomUp)
+                frontier = expand(null, size, depth, BOTTOM_UP_GRAIN);
+            else
+                frontier = expand(frontier, frontier.length, depth, TOP_DOWN_GRAIN);
+            visitedCount += frontier.length;
+            depth += 1;
+        }
+        int found = goal.get();
+        if (found < 0 || isCancelled())
+            return null;
+        return pathFromTo(start, maze.idOf(found));
+    }
+
+    // expands level `depth' in parallel, and returns the next frontier;
+    // if `frontier' is null, the level is expanded bottom-up over all
+    // `length' nodes of the maze; otherwise it is expanded top-down
+    // from the first `length' nodes in `frontier'
+    private int[] expand(int[] frontier, int length, int depth, int grain)
+    {
+        List<Expansion> tasks = new ArrayList<>(1 + length / grain);
+        for (int from = 0; from < length; from += grain)
+            tasks.add(new Expansion(frontier, from, Math.min(from + grain, length), depth));
+        invokeAll(tasks);
+        int nextLength = 0;
+        for (Expansion task: tasks)
+            nextLength += task.getRawResult().length;
+        int[] next = new int[nextLength];
+        int offset = 0;
+        for (Expansion task: tasks) {
+            int[] part = task.getRawResult();
+            System.arraycopy(part, 0, next, offset, part.length);
+            offset += part.length;
+        }
+        return next;
+    }
+
+    // every node in frontier[from .. to) claims its unvisited neighbors
+    private int[] topDown(int[] frontier, int from, int to, int depth)
+    {
+        int[] next = new int[4*(to - from)];
+        int count = 0;
+        int player = -1;
+        for (int k = from; k < to && !stopped(); k++) {
+            int current = frontier[k];
+            for (int nb: maze.neighbors(maze.idOf(current))) {
+                int index = maze.indexOf(nb);
+                if (predecessor.putIfAbsent(index, current)) {
+                    level[index] = depth + 1;
+                    next[count++] = index;
+                    player = visit(player, nb, index);
+                }
+            }
+        }
+        return Arrays.copyOf(next, count);
+    }
+
+    // every unvisited node in from .. to - 1 looks for a neighbor in the frontier
+    private int[] bottomUp(int from, int to, int depth)
+    {
+        int[] next = new int[to - from];
+        int count = 0;
+        int player = -1;
+        for (int index = from; index < to && !stopped(); index++) {
+            if (level[index] >= 0)
+                continue;
+            int id = maze.idOf(index);
+            if (!maze.isAccessible(id))
+                continue;
+            for (int nb: maze.neighbors(id)) {
+                int nbIndex = maze.indexOf(nb);
+                if (level[nbIndex] == depth) {
+                    predecessor.putIfAbsent(index, nbIndex);
+                    level[index] = depth + 1;
+                    next[count++] = index;
+                    player = visit(player, id, index);
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(next, count);
+    }
+
+    // animates a newly visited node, and records it if it is a goal;
+    // returns the player of the calling subtask
+    private int visit(int player, int id, int index)
+    {
+        if (player < 0)
+            player = maze.newPlayer(id);
+        else
+            maze.move(player, id);
+        if (maze.hasGoal(id)) {
+            goal.compareAndSet(-1, index);
+            goals.add(index);
+        }
+        return player;
+    }
+
+    // has the search found all it is looking for, or been cancelled?
+    private boolean stopped()
+    {
+        return (stopAtGoal && goal.get() >= 0) || isCancelled();
+    }
+
+    /**
+     * Returns the distance from the start node of a node visited by
+     * the search.
+     *
+     * @param index   the index of a node in the maze
+     * @return        the number of steps of a shortest path from the start
+     *                node to <code>index</code>; <code>-1</code> if the
+     *                search has not visited <code>index</code>
+     */
+    protected int distanceOf(int index)
+    {
+        return level[index];
+    }
+
+    /**
+     * Returns the indices of all goal nodes found by the search, in
+     * unspecified order. If the solver stops at the first level with a
+     * goal, these are (some of) the goals nearest to the start node;
+     * otherwise, they are all goals reachable from the start node.
+     *
+     * @return   the indices of the goal nodes found by the search
+     */
+    protected int[] reachedGoals()
+    {
+        int[] result = new int[goals.size()];
+        int count = 0;
+        for (int index: goals)
+            result[count++] = index;
+        return result;
+    }
+
+    /**
+     * Expansion of a chunk of a level, as a subtask of the solver.
+     */
+    private class Expansion extends RecursiveTask<int[]>
+    {
+        private final int[] frontier;
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        Expansion(int[] frontier, int from, int to, int depth)
+        {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected int[] compute()
+        {
+            if (frontier == null)
+                return bottomUp(from, to, depth);
+            return topDown(frontier, from, to, depth);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>BuiltinSolvers</code> groups the factories of the solvers in
+ * this package, which are registered with <code>ServiceLoader</code>
+ * in <code>META-INF/services/amazed.solver.SolverFactory</code>.
+ * <p>
+ * Every factory rejects parameters it does not know, except for
+ * <code>threads</code>, which is accepted by all of them (see
+ * <code>SolverFactory</code>).
+ */
+
+public final class BuiltinSolvers
+{
+    private BuiltinSolvers()
+    {
+    }
+
+    // common part of the built-in factories: name, description, and
+    // checking of the parameter names
+    private abstract static class Builtin implements SolverFactory
+    {
+        private final String name;
+        private final String description;
+        private final List<String> keys;
+
+        Builtin(String name, String description, String... keys)
+        {
+            this.name = name;
+            this.description = description;
+            this.keys = Arrays.asList(keys);
+        }
+
+        @Override
+        public String name()
+        {
+            return name;
+        }
+
+        @Override
+        public String description()
+        {
+            return description;
+        }
+
+        @Override
+        public RecursiveTask<List<Integer>> create(Maze maze, Map<String, String> parameters)
+        {
+            for (String key: parameters.keySet()) {
+                if (!key.equals("threads") && !keys.contains(key))
+                    throw new IllegalArgumentException("Unknown parameter '" + key + "' of solver " + name);
+            }
+            return newSolver(maze, parameters);
+        }
+
+        abstract RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters);
+    }
+
+    private static int intParameter(Map<String, String> parameters, String key, int defaultValue)
+    {
+        String value = parameters.get(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + key + " must be an integer: " + value);
+        }
+    }
+
+    /**
+     * Factory of <code>SequentialSolver</code>, named
+     * <code>sequential</code>.
+     */
+    public static class Sequential extends Builtin
+    {
+        public Sequential()
+        {
+            super("sequential", "single-thread depth-first search");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new SequentialSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>ForkJoinSolver</code>, named
+     * <code>parallel</code>; parameter <code>forkAfter</code> (default
+     * <code>8</code>) is the number of steps after which a task forks.
+     */
+    public static class Parallel extends Builtin
+    {
+        public Parallel()
+        {
+            super("parallel", "fork/join depth-first search [forkAfter=N, default 8]", "forkAfter");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new ForkJoinSolver(maze, intParameter(parameters, "forkAfter", 8));
+        }
+    }
+
+    /**
+     * Factory of <code>BreadthFirstSolver</code>, named
+     * <code>bfs</code>.
+     */
+    public static class BreadthFirst extends Builtin
+    {
+        public BreadthFirst()
+        {
+            super("bfs", "parallel level-synchronous breadth-first search, shortest path");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new BreadthFirstSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>BidirectionalSolver</code>, named
+     * <code>bidirectional</code>.
+     */
+    public static class Bidirectional extends Builtin
+    {
+        public Bidirectional()
+        {
+            super("bidirectional", "breadth-first searches from the start and from the goals");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new BidirectionalSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>AStarSolver</code>, named <code>astar</code>.
+     */
+    public static class AStar extends Builtin
+    {
+        public AStar()
+        {
+            super("astar", "A* search, shortest path");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new AStarSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>JumpPointSolver</code>, named <code>jps</code>.
+     */
+    public static class JumpPoint extends Builtin
+    {
+        public JumpPoint()
+        {
+            super("jps", "Jump Point Search, shortest path");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new JumpPointSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>JunctionSolver</code>, named
+     * <code>junction</code>.
+     */
+    public static class Junction extends Builtin
+    {
+        public Junction()
+        {
+            super("junction", "Dijkstra on the junction graph, shortest path");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new JunctionSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>IncrementalSolver</code>, named
+     * <code>incremental</code>.
+     */
+    public static class Incremental extends Builtin
+    {
+        public Incremental()
+        {
+            super("incremental", "Lifelong Planning A*, shortest path, repaired when walls change");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new IncrementalSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>VirtualThreadSolver</code>, named
+     * <code>virtual</code>.
+     */
+    public static class VirtualThread extends Builtin
+    {
+        public VirtualThread()
+        {
+            super("virtual", "depth-first search with a thread per branch");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new VirtualThreadSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>BitboardSolver</code>, named
+     * <code>bitboard</code>.
+     */
+    public static class Bitboard extends Builtin
+    {
+        public Bitboard()
+        {
+            super("bitboard", "bit-parallel breadth-first flood fill, shortest path");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            return new BitboardSolver(maze);
+        }
+    }
+
+    /**
+     * Factory of <code>PortfolioSolver</code>, named
+     * <code>portfolio</code>; parameter <code>solvers</code> (default
+     * <code>sequential+bfs+astar</code>) lists the specifications of
+     * the solvers to be raced, separated by <code>+</code>.
+     */
+    public static class Portfolio extends Builtin
+    {
+        public Portfolio()
+        {
+            super("portfolio", "races several solvers [solvers=S+S+..., default sequential+bfs+astar]", "solvers");
+        }
+
+        @Override
+        RecursiveTask<List<Integer>> newSolver(Maze maze, Map<String, String> parameters)
+        {
+            List<RecursiveTask<List<Integer>>> solvers = new ArrayList<>();
+            for (String spec: parameters.getOrDefault("solvers", "sequential+bfs+astar").split("\\+"))
+                solvers.add(SolverSpec.parse(spec).create(maze));
+            return new PortfolioSolver(maze, solvers);
+        }
+    }
+}
@@ -2,28 +2,10 @@ package amazed.solver;
 
 import amazed.maze.Maze;
 
-import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import amazed.maze.Maze;
-
-import java.util.concurrent.RecursiveTask;
-
+import java.util.Arrays;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Stack;
-import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <code>ForkJoinSolver</code> implements a solver for
@@ -32,38 +14,83 @@ import java.util.Collections;
  * <p>
  * Instances of <code>ForkJoinSolver</code> should be run by a
  * <code>ForkJoinPool</code> object.
+ * <p>
+ * Every task explores the maze depth first using an explicit stack of
+ * node indices, so that long corridors do not grow the call stack.
+ * Nodes are claimed in a shared <code>VisitedSet</code> when they are
+ * pushed, and thus every node is pushed by exactly one task. After
+ * visiting at least <code>forkAfter</code> nodes, a task hands the
+ * bottom half of its stack &mdash; the nodes closest to the start of
+ * its exploration &mdash; to a new forked task, but only if the pool
+ * does not have enough queued tasks already to keep its idle workers
+ * busy. This bounds the number of tasks to what the pool can actually
+ * run in parallel.
+ * <p>
+ * Predecessors are recorded in a <code>PredecessorArray</code> shared
+ * by all tasks, so the path to a goal is reconstructed once, by the
+ * root task, after all tasks have terminated.
  */
 
-
 public class ForkJoinSolver extends SequentialSolver {
 
-    // ID of current node
-    private final int current;
+    // a task only splits while the pool has fewer queued tasks than this
+    // in excess of the number of idle workers that could steal them
+    private static final int SURPLUS_THRESHOLD = 2;
+
+    // no goal found yet
+    private static final int NO_GOAL = -1;
+
+    // initial capacity of a task's stack
+    private static final int STACK_CAPACITY = 64;
+
+    // is this task the root task of the search?
+    private final boolean root;
+
+    // nodes (indices) claimed by this task but not visited yet
+    private int[] stack;
+    private int top;
+
+    // ID of player; -1 before this task visits its first node
+    private int player = -1;
 
-    // ID of player
-    private final int player;
+    // neighbors of the node being visited, reused for every node
+    private final int[] adjacent = new int[4];
 
-    // thread safe ArrayList
-    private final CopyOnWriteArrayList<ForkJoinTask<List<Integer>>> threads = new CopyOnWriteArrayList<>();
+    // tasks forked by this task
+    private final List<ForkJoinSolver> children = new ArrayList<>();
 
-    private ConcurrentSkipListMap<Integer, Integer> predecessor;
-    private ConcurrentSkipListSet<Integer> visited;
+    // index of the goal found by any task of the search; NO_GOAL if none
+    private AtomicInteger goal;
 
-    private static AtomicBoolean GOAL_FOUND = new AtomicBoolean(false);
+    // the root task, whose cancellation stops all tasks of the search
+    private final ForkJoinSolver search;
 
     /**
-     * initialize with empty thread safe data structures
+     * thread safe data structures are shared by all tasks of a search:
+     * only the root task creates them, see initShared
      */
     @Override
     protected void initStructures() {
-        // skip list set for visited nodes
-        super.initStructures();
+    }
+
+    /**
+     * initialize with empty thread safe data structures,
+     * with the start node already claimed
+     */
+    private void initShared() {
+        int index = maze.indexOf(start);
 
-        // skip list set for visited nodes
-        visited = new ConcurrentSkipListSet<>();
+        // lock-free bitset for visited nodes
+        visited = new VisitedSet(maze.size());
+        visited.tryClaim(index);
 
-        // skip list map for predecessors
-        predecessor = new ConcurrentSkipListMap<>();
+        // array of predecessors, first writer wins
+        predecessor = new PredecessorArray(maze.size());
+
+        goal = new AtomicInteger(NO_GOAL);
+
+        stack = new int[STACK_CAPACITY];
+        stack[top++] = index;
     }
 
     /**
@@ -74,10 +101,7 @@ public class ForkJoinSolver extends SequentialSolver {
      */
     public ForkJoinSolver(Maze maze)
     {
-        super(maze);
-        current = start;
-        player = maze.newPlayer(current);
-        initStructures();
+        this(maze, 0);
     }
 
     /**
@@ -86,39 +110,39 @@ public class ForkJoinSolver extends SequentialSolver {
      * nodes.
      *
      * @param maze        the maze to be searched
-     * @param forkAfter   the number of steps (visited nodes) after
-     *                    which a parallel task is forked; if
+     * @param forkAfter   the minimum number of steps (visited nodes)
+     *                    that a task performs before it forks a
+     *                    parallel task; if
      *                    <code>forkAfter &lt;= 0</code> the solver never
      *                    forks new tasks
      */
     public ForkJoinSolver(Maze maze, int forkAfter)
     {
         super(maze);
-        player = maze.newPlayer(start);
-        current = start;
+        this.root = true;
+        this.search = this;
         this.forkAfter = forkAfter;
-        initStructures();
+        initShared();
     }
 
     /**
-     * Creates a solver that searches in <code>maze</code> from the
-     * current node to a goal, forking after a given number of visited
-     * nodes.
+     * Creates a task of a search that continues from the nodes in a
+     * part of another task's stack.
      *
-     * @param maze        the maze to be searched
-     * @param forkAfter   the number of steps (visited nodes) after which a parallel task is forked; if
-     *                    <code>forkAfter <= 0</code> the solver never forks new tasks
-     * @param current     current node ID
-     * @param visited     set of already visited node IDs
-     * @param predecessor mapped predecessor, <fromID, toID>
+     * @param parent   the task forking this one
+     * @param stack    the claimed nodes (indices) to be visited by this task
      */
-    public ForkJoinSolver(Maze maze, int current, int forkAfter, ConcurrentSkipListSet<Integer> visited, ConcurrentSkipListMap<Integer, Integer> predecessor) {
-        super(maze);
-        player = maze.newPlayer(current);
-        this.current = current;
-        this.forkAfter = forkAfter;
-        this.visited = visited;
-        this.predecessor = predecessor;
+    private ForkJoinSolver(ForkJoinSolver parent, int[] stack)
+    {
+        super(parent.maze);
+        this.root = false;
+        this.search = parent.search;
+        this.forkAfter = parent.forkAfter;
+        this.visited = parent.visited;
+        this.predecessor = parent.predecessor;
+        this.goal = parent.goal;
+        this.stack = stack;
+        this.top = stack.length;
     }
 
     /**
@@ -127,6 +151,9 @@ public class ForkJoinSolver extends SequentialSolver {
      * the maze. If such a path cannot be found (because there are no
      * goals, or all goals are unreachable), the method returns
      * <code>null</code>.
+     * <p>
+     * Only the root task returns a path; forked tasks always return
+     * <code>null</code>.
      *
      * @return   the list of node identifiers from the start node to a
      *           goal node in the maze; <code>null</code> if such a path cannot
@@ -134,106 +161,93 @@ public class ForkJoinSolver extends SequentialSolver {
      */
     @Override
     public List<Integer> compute() {
-        return parallelSearch(current);
-    }
-
-    /**
-     *
-     * @param current current ID of node
-     * @return
-     *      full path if found
-     *      null if not found
-     */
-    private List<Integer> parallelSearch(int current) {
-        if (GOAL_FOUND.get())
+        parallelSearch();
+        joinChildren();
+        if (!root)
             return null;
+        int found = goal.get();
+        if (found == NO_GOAL || isCancelled())
+            return null;
+        return pathFromTo(start, maze.idOf(found));
+    }
 
-        // add current node ID to visited list
-        visited.add(current);
-
-        // if current node is goal, return full path
-        if (maze.hasGoal(current)) {
-            GOAL_FOUND.set(true);
-            joinThreads();
-            return pathFromTo(start, current);
-        }
-
-        // get all neighbors to set
-        Set<Integer> neighbors = maze.neighbors(current);
-
-        // create empty list of unvisited nodes
-        List<Integer> unvisited = new ArrayList<>();
-
-        // loop through all neighbors (neighbor)
-        // if visited list does not contain current neighbor,
-        // add it to unvisited and set its predecessor to current
-        for (Integer neighbor : neighbors) {
-            if (!visited.contains(neighbor)) {
-                unvisited.add(neighbor);
-                predecessor.put(neighbor, current);
+    // depth-first search from the nodes on the stack, until the stack
+    // is empty, any task finds a goal, or the search is cancelled
+    private void parallelSearch() {
+        int steps = 0;
+        while (top > 0 && goal.get() == NO_GOAL && !search.isCancelled()) {
+            int current = stack[--top];
+            int id = maze.idOf(current);
+
+            if (player < 0)
+                player = maze.newPlayer(id);
+            else
+                maze.move(player, id);
+
+            if (maze.hasGoal(id)) {
+                goal.compareAndSet(NO_GOAL, current);
+                return;
             }
-        }
 
-        // if number of unvisited nodes is less than forkAfter value, then 'just do it'
-        // else fork with current data
-        if (unvisited.size() == 1) {
-            Integer nextNode = unvisited.iterator().next();
-            maze.move(player, nextNode);
-            return parallelSearch(nextNode);
-        } else
-            for (Integer nextNode : unvisited) {
-                threads.add(new ForkJoinSolver(maze, nextNode, forkAfter, visited, predecessor).fork());
-                // debug
-                //System.out.println("im a new thread");
+            // push every neighbor that this task manages to claim;
+            // a claim succeeds only once, so no node is expanded twice
+            int count = maze.neighbors(id, adjacent);
+            for (int k = 0; k < count; k++) {
+                int index = maze.indexOf(adjacent[k]);
+                if (visited.tryClaim(index)) {
+                    predecessor.putIfAbsent(index, current);
+                    push(index);
+                }
             }
 
-        List<Integer> pathToGoal = joinThreads();
-
-        if (pathToGoal != null) {
-            int mid = pathToGoal.remove(0);
-            List<Integer> pathFromStart = pathFromTo(start, mid);
-            pathFromStart.addAll(pathToGoal);
-            return pathFromStart;
+            steps += 1;
+            if (shouldSplit(steps)) {
+                split();
+                steps = 0;
+            }
         }
-        return null;
     }
 
-    // Some helper functions
+    // fork only after forkAfter steps, when there is something to hand
+    // over, and when the pool is short of queued work
+    private boolean shouldSplit(int steps) {
+        return forkAfter > 0
+            && steps >= forkAfter
+            && top > 1
+            && getSurplusQueuedTaskCount() < SURPLUS_THRESHOLD;
+    }
 
-    private List<Integer> joinThreads() {
-        List<Integer> result = null;
+    // hand the bottom half of the stack to a new forked task
+    private void split() {
+        int half = top / 2;
+        ForkJoinSolver child = new ForkJoinSolver(this, Arrays.copyOf(stack, half));
+        System.arraycopy(stack, half, stack, 0, top - half);
+        top -= half;
+        children.add(child);
+        child.fork();
+    }
 
-        for (ForkJoinTask<List<Integer>> thread : threads) {
-            List<Integer> partialPath = thread.join();
-            if (partialPath != null) result = partialPath;
-        }
-        return result;
+    private void push(int index) {
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, 2 * stack.length);
+        stack[top++] = index;
     }
 
-    /** NOTE: 
-     * Returns the connected path, as a list of node identifiers, that
-     * goes from node <code>from</code> to node <code>to</code>
-     * following the inverse of relation <code>predecessor</code>. If
-     * such a path cannot be reconstructed from
-     * <code>predecessor</code>, the method returns <code>null</code>.
+    /**
+     * Returns the number of times a task of this search tried to visit
+     * a node that had already been claimed by another task (or by
+     * itself), as a measure of contention.
      *
-     * @param from   the identifier of the initial node on the path
-     * @param to     the identifier of the final node on the path
-     * @return       the list of node identifiers from <code>from</code> to
-     *               <code>to</code> if such a path can be reconstructed from
-     *               <code>predecessor</code>; <code>null</code> otherwise
+     * @return   the number of duplicate visit attempts so far
      */
-    protected List<Integer> pathFromTo(int from, int to) {
-        List<Integer> path = new LinkedList<>();
-        Integer current = to;
-        while (current != from) {
-            path.add(current);
-            current = predecessor.get(current);
-            if (current == null)
-                return null;
-        }
-        path.add(from);
-        Collections.reverse(path);
-        return path;
+    public long duplicateClaims() {
+        return visited.duplicateClaims();
+    }
+
+    // Some helper functions
+
+    private void joinChildren() {
+        for (ForkJoinSolver child : children)
+            child.join();
     }
 }
@@ -0,0 +1,292 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.PathResult;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * <code>IncrementalSolver</code> implements a solver for
+ * <code>Maze</code> objects whose walls change between searches,
+ * using Lifelong Planning A* (LPA*), the incremental search
+ * underlying D* Lite.
+ * <p>
+ * The first search is an A* search from the start node, with the
+ * same heuristic as <code>AStarSolver</code>. The solver keeps the
+ * distances it computes: for every node, <code>g</code> is its
+ * distance from the start as last computed, and <code>rhs</code> a
+ * one-step lookahead computed from the <code>g</code> values of its
+ * neighbors. A node is <em>inconsistent</em> when the two values
+ * differ, and only inconsistent nodes are in the open set. All goals
+ * are connected to a single virtual target node, so that the search
+ * finds a path to a nearest goal.
+ * <p>
+ * The solver registers a wall listener on the maze. When nodes are
+ * opened or closed with {@link amazed.maze.Maze#open(int)} and
+ * {@link amazed.maze.Maze#close(int)}, method <code>replan</code>
+ * only updates the <code>rhs</code> values of the changed nodes and
+ * their neighbors, and then expands inconsistent nodes until the
+ * distance of the target is consistent again. The work done by
+ * <code>replan</code> depends on how many distances the changes
+ * affect, not on the size of the maze. The path returned is always a
+ * shortest path to a goal.
+ * <p>
+ * Method <code>compute</code> is equivalent to <code>replan</code>,
+ * so the first search can run in a pool like any other solver. Method
+ * <code>detach</code> deregisters the solver from the maze when it is
+ * no longer needed. <code>IncrementalSolver</code> uses the
+ * coordinate API of the maze; its internal arrays are indexed by grid
+ * position, <code>row*cols + col</code>.
+ */
+
+public class IncrementalSolver extends SequentialSolver
+{
+    // distance of unreachable nodes
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final int rows;
+    private final int cols;
+    // grid position of the start node
+    private final int root;
+    // grid position of the virtual target, successor of all goals
+    private final int target;
+    // grid positions of the goals
+    private final int[] goals;
+    // grid position --> distance from the start, as last expanded
+    private final int[] g;
+    // grid position --> one-step lookahead of g; target --> minimum g of a goal
+    private final int[] rhs;
+    // inconsistent nodes, by key
+    private final IndexedMinHeap open;
+
+    // grid positions of the nodes opened or closed since the last search
+    private int[] changes = new int[16];
+    private int changeCount = 0;
+    private final IntConsumer listener = this::wallChanged;
+
+    private int player = -1;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, and follows the changes to the walls of
+     * <code>maze</code>.
+     *
+     * @param maze   the maze to be searched
+     */
+    public IncrementalSolver(Maze maze)
+    {
+        super(maze);
+        rows = maze.rows();
+        cols = maze.cols();
+        target = rows*cols;
+        int[] goalIds = maze.goals();
+        goals = new int[goalIds.length];
+        for (int k = 0; k < goals.length; k++)
+            goals[k] = position(goalIds[k]);
+        g = new int[target + 1];
+        rhs = new int[target + 1];
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        open = new IndexedMinHeap(target + 1);
+        root = position(start);
+        rhs[root] = 0;
+        open.put(root, key(root));
+        maze.addWallListener(listener);
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze, as in <code>replan</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        return replan();
+    }
+
+    /**
+     * Returns a shortest path, as a list of node identifiers, that
+     * goes from the start node to a goal node in the maze as it is
+     * now, repairing the result of the previous search according to
+     * the walls opened or closed since then. If such a path cannot be
+     * found (because there are no goals, or all goals are
+     * unreachable), the method returns <code>null</code>.
+     * <p>
+     * This method must not be called while the walls of the maze are
+     * changing.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    public synchronized List<Integer> replan()
+    {
+        if (player < 0)
+            player = maze.newPlayer(start);
+        for (int position: drainChanges()) {
+            updateNode(position);
+            int row = position / cols, col = position % cols;
+            for (int d = 0; d < 4; d++) {
+                int nRow = row + ROW_STEPS[d], nCol = col + COL_STEPS[d];
+                if (0 <= nRow && nRow < rows && 0 <= nCol && nCol < cols)
+                    updateNode(nRow*cols + nCol);
+            }
+        }
+        if (goals.length == 0)
+            return null;
+        computeShortestPath();
+        // a cancelled search resumes at the next call
+        if (isCancelled() || g[target] == INFINITY)
+            return null;
+        return tracePath();
+    }
+
+    /**
+     * Deregisters this solver from the maze, which stops notifying it
+     * of changes to its walls. After calling this method,
+     * <code>replan</code> no longer takes changes into account.
+     */
+    public void detach()
+    {
+        maze.removeWallListener(listener);
+    }
+
+    private void computeShortestPath()
+    {
+        // nodes whose key ties with the target's are expanded too, so
+        // that every node on a shortest path is consistent for tracePath
+        while (!open.isEmpty() && (open.peekKey() <= key(target) || rhs[target] != g[target])
+               && !isCancelled()) {
+            int current = open.poll();
+            if (current != target)
+                maze.move(player, maze.idAt(current / cols, current % cols));
+            if (g[current] > rhs[current]) {
+                // overconsistent: a shorter path has been found
+                g[current] = rhs[current];
+                updateSuccessors(current);
+            } else {
+                // underconsistent: the path through current got longer
+                g[current] = INFINITY;
+                updateNode(current);
+                updateSuccessors(current);
+            }
+        }
+    }
+
+    private void updateSuccessors(int position)
+    {
+        if (position == target || !accessible(position))
+            return;
+        int row = position / cols, col = position % cols;
+        for (int d = 0; d < 4; d++) {
+            int nRow = row + ROW_STEPS[d], nCol = col + COL_STEPS[d];
+            if (maze.isAccessible(nRow, nCol))
+                updateNode(nRow*cols + nCol);
+        }
+        if (maze.hasGoal(row, col))
+            updateNode(target);
+    }
+
+    // recomputes rhs of `position', and puts it in the open set iff inconsistent
+    private void updateNode(int position)
+    {
+        if (position == target) {
+            int min = INFINITY;
+            for (int goal: goals)
+                min = Math.min(min, g[goal]);
+            rhs[target] = min;
+        } else if (position != root) {
+            int min = INFINITY;
+            if (accessible(position)) {
+                int row = position / cols, col = position % cols;
+                for (int d = 0; d < 4; d++) {
+                    int nRow = row + ROW_STEPS[d], nCol = col + COL_STEPS[d];
+                    if (maze.isAccessible(nRow, nCol)) {
+                        int nb = g[nRow*cols + nCol];
+                        if (nb != INFINITY)
+                            min = Math.min(min, nb + 1);
+                    }
+                }
+            }
+            rhs[position] = min;
+        }
+        if (g[position] != rhs[position])
+            open.put(position, key(position));
+        else
+            open.remove(position);
+    }
+
+    // goes back from the target, each time to a neighbor one step nearer to the start
+    private PathResult tracePath()
+    {
+        int length = g[target];
+        int[] path = new int[length + 1];
+        int current = -1;
+        for (int goal: goals) {
+            if (g[goal] == length) {
+                current = goal;
+                break;
+            }
+        }
+        for (int k = length; k > 0; k--) {
+            path[k] = maze.indexOf(maze.idAt(current / cols, current % cols));
+            int row = current / cols, col = current % cols;
+            int previous = -1;
+            for (int d = 0; d < 4 && previous < 0; d++) {
+                int nRow = row + ROW_STEPS[d], nCol = col + COL_STEPS[d];
+                if (maze.isAccessible(nRow, nCol) && g[nRow*cols + nCol] == k - 1)
+                    previous = nRow*cols + nCol;
+            }
+            if (previous < 0)
+                throw new IllegalStateException("No predecessor of node at " + row + ", " + col);
+            current = previous;
+        }
+        path[0] = maze.indexOf(start);
+        return PathResult.of(maze, path);
+    }
+
+    // orders by min(g, rhs) + h, then by min(g, rhs)
+    private long key(int position)
+    {
+        int m = Math.min(g[position], rhs[position]);
+        if (m == INFINITY)
+            return ((long) INFINITY << 32) | INFINITY;
+        int h = position == target ? 0 : maze.goalDistance(maze.idAt(position / cols, position % cols));
+        return (Math.min((long) m + h, INFINITY) << 32) | m;
+    }
+
+    private boolean accessible(int position)
+    {
+        return maze.isAccessible(position / cols, position % cols);
+    }
+
+    private int position(int id)
+    {
+        return maze.row(id)*cols + maze.col(id);
+    }
+
+    // steps north, south, west, east
+    private static final int[] ROW_STEPS = { -1, 1, 0, 0 };
+    private static final int[] COL_STEPS = { 0, 0, -1, 1 };
+
+    private synchronized void wallChanged(int id)
+    {
+        if (changeCount == changes.length)
+            changes = Arrays.copyOf(changes, 2*changeCount);
+        changes[changeCount++] = position(id);
+    }
+
+    private synchronized int[] drainChanges()
+    {
+        int[] result = Arrays.copyOf(changes, changeCount);
+        changeCount = 0;
+        return result;
+    }
+}
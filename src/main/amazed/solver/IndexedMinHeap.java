@@ -0,0 +1,129 @@
+package amazed.solver;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>IndexedMinHeap</code> is a binary min-heap of the integers in
+ * <code>0 .. capacity - 1</code>, each at most once, ordered by
+ * <code>long</code> keys.
+ * <p>
+ * Unlike <code>MinHeap</code>, the heap records the position of every
+ * element, so that the key of an element can be changed, and an
+ * element removed, in logarithmic time. Incremental searches need
+ * this, since they revise the keys of nodes already in the heap.
+ */
+
+class IndexedMinHeap
+{
+    private final long[] keys;
+    // position --> element
+    private final int[] heap;
+    // element --> position; -1 if not in the heap
+    private final int[] position;
+    private int size = 0;
+
+    IndexedMinHeap(int capacity)
+    {
+        keys = new long[capacity];
+        heap = new int[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    boolean contains(int element)
+    {
+        return position[element] >= 0;
+    }
+
+    // adds `element' with key `key', or changes its key if already in the heap
+    void put(int element, long key)
+    {
+        int k = position[element];
+        if (k < 0) {
+            k = size++;
+            heap[k] = element;
+            position[element] = k;
+        }
+        keys[element] = key;
+        siftDown(siftUp(k));
+    }
+
+    // removes `element' if it is in the heap
+    void remove(int element)
+    {
+        int k = position[element];
+        if (k < 0)
+            return;
+        position[element] = -1;
+        size -= 1;
+        if (k == size)
+            return;
+        int last = heap[size];
+        heap[k] = last;
+        position[last] = k;
+        siftDown(siftUp(k));
+    }
+
+    // key of the minimum element
+    long peekKey()
+    {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return keys[heap[0]];
+    }
+
+    // removes the minimum element and returns it
+    int poll()
+    {
+        if (size == 0)
+            throw new NoSuchElementException();
+        int result = heap[0];
+        remove(result);
+        return result;
+    }
+
+    private int siftUp(int k)
+    {
+        int element = heap[k];
+        long key = keys[element];
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (keys[heap[parent]] <= key)
+                break;
+            move(heap[parent], k);
+            k = parent;
+        }
+        move(element, k);
+        return k;
+    }
+
+    private void siftDown(int k)
+    {
+        int element = heap[k];
+        long key = keys[element];
+        while (true) {
+            int child = 2*k + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+                child += 1;
+            if (key <= keys[heap[child]])
+                break;
+            move(heap[child], k);
+            k = child;
+        }
+        move(element, k);
+    }
+
+    private void move(int element, int k)
+    {
+        heap[k] = element;
+        position[element] = k;
+    }
+}
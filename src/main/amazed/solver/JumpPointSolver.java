@@ -0,0 +1,185 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.PathResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <code>JumpPointSolver</code> implements a solver for
+ * <code>Maze</code> objects using Jump Point Search, a variant of A*
+ * for uniform-cost grids.
+ * <p>
+ * The maze is a 4-connected grid where every step costs the same.
+ * Starting from a node, many cells along a straight line are
+ * <em>symmetric</em>: they can be reached just as cheaply through
+ * other routes, so there is no need to expand them. Instead of adding
+ * each neighbor to the open set, the search <em>jumps</em> in a
+ * straight line until it reaches a goal, a dead end, or a cell with
+ * a <em>forced</em> neighbor &mdash; one next to a wall that could
+ * not be reached as cheaply otherwise. Only such <em>jump points</em>
+ * enter the open set. When moving vertically, a cell is also a jump
+ * point if a horizontal jump from it finds one. On maps with wide
+ * open regions this skips most of the cells that A* expands one by
+ * one, and the path returned is still a shortest path.
+ * <p>
+ * <code>JumpPointSolver</code> uses the coordinate API of the maze.
+ * Its internal arrays are indexed by grid position,
+ * <code>row*cols + col</code>.
+ */
+
+public class JumpPointSolver extends SequentialSolver
+{
+    private int rows;
+    private int cols;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public JumpPointSolver(Maze maze)
+    {
+        super(maze);
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        return jumpPointSearch();
+    }
+
+    private List<Integer> jumpPointSearch()
+    {
+        if (maze.goals().length == 0)
+            return null;
+        rows = maze.rows();
+        cols = maze.cols();
+        int player = maze.newPlayer(start);
+        // grid position --> length of the shortest path found so far
+        int[] distance = new int[rows*cols];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        MinHeap open = new MinHeap();
+
+        int root = maze.row(start)*cols + maze.col(start);
+        distance[root] = 0;
+        open.add(key(0, maze.goalDistance(start)), entry(root, root));
+        while (!open.isEmpty() && !isCancelled()) {
+            long entry = open.poll();
+            int current = (int) (entry >>> 32);
+            int parent = (int) entry;
+            // a jump point is closed when its predecessor is recorded
+            if (!predecessor.putIfAbsent(current, parent))
+                continue;
+            int row = current / cols, col = current % cols;
+            maze.move(player, maze.idAt(row, col));
+            if (maze.hasGoal(row, col))
+                return expandPath(root, current);
+
+            int dRow = Integer.signum(row - parent / cols);
+            int dCol = Integer.signum(col - parent % cols);
+            for (int d = 0; d < 4; d++) {
+                int nRow = ROW_STEPS[d], nCol = COL_STEPS[d];
+                // never go back towards the parent
+                if (current != parent && nRow == -dRow && nCol == -dCol)
+                    continue;
+                int next = jump(row, col, nRow, nCol);
+                if (next < 0 || predecessor.contains(next))
+                    continue;
+                int g = distance[current] + Math.abs(next / cols - row) + Math.abs(next % cols - col);
+                if (g < distance[next]) {
+                    distance[next] = g;
+                    int h = maze.goalDistance(maze.idAt(next / cols, next % cols));
+                    open.add(key(g, h), entry(next, current));
+                }
+            }
+        }
+        // all reachable jump points explored, no goal found
+        return null;
+    }
+
+    // steps north, south, west, east
+    private static final int[] ROW_STEPS = { -1, 1, 0, 0 };
+    private static final int[] COL_STEPS = { 0, 0, -1, 1 };
+
+    // jumps from row, col in direction dRow, dCol; returns the grid
+    // position of the jump point reached, or -1 if there is none
+    private int jump(int row, int col, int dRow, int dCol)
+    {
+        while (true) {
+            row += dRow;
+            col += dCol;
+            if (!maze.isAccessible(row, col))
+                return -1;
+            if (maze.hasGoal(row, col))
+                return row*cols + col;
+            if (dCol != 0) {
+                // horizontal: a vertical neighbor next to a wall is forced
+                if ((open(row - 1, col) && !open(row - 1, col - dCol))
+                        || (open(row + 1, col) && !open(row + 1, col - dCol)))
+                    return row*cols + col;
+            } else {
+                // vertical: a horizontal neighbor next to a wall is forced
+                if ((open(row, col - 1) && !open(row - dRow, col - 1))
+                        || (open(row, col + 1) && !open(row - dRow, col + 1)))
+                    return row*cols + col;
+                if (jump(row, col, 0, -1) >= 0 || jump(row, col, 0, 1) >= 0)
+                    return row*cols + col;
+            }
+        }
+    }
+
+    private boolean open(int row, int col)
+    {
+        return maze.isAccessible(row, col);
+    }
+
+    // path through all cells between consecutive jump points
+    private PathResult expandPath(int root, int goal)
+    {
+        int[] jumpPoints = predecessor.path(root, goal);
+        int length = 1;
+        for (int k = 1; k < jumpPoints.length; k++)
+            length += Math.abs(jumpPoints[k] / cols - jumpPoints[k - 1] / cols)
+                + Math.abs(jumpPoints[k] % cols - jumpPoints[k - 1] % cols);
+        int[] path = new int[length];
+        int row = root / cols, col = root % cols;
+        int count = 0;
+        path[count++] = maze.indexOf(maze.idAt(row, col));
+        for (int k = 1; k < jumpPoints.length; k++) {
+            int toRow = jumpPoints[k] / cols, toCol = jumpPoints[k] % cols;
+            int dRow = Integer.signum(toRow - row), dCol = Integer.signum(toCol - col);
+            while (row != toRow || col != toCol) {
+                row += dRow;
+                col += dCol;
+                path[count++] = maze.indexOf(maze.idAt(row, col));
+            }
+        }
+        return PathResult.of(maze, path);
+    }
+
+    // orders by g + h, then by h
+    private static long key(int g, int h)
+    {
+        return ((long) (g + h) << 32) | h;
+    }
+
+    // heap value: a jump point together with the jump point it is reached from
+    private static long entry(int position, int parent)
+    {
+        return ((long) position << 32) | (parent & 0xFFFFFFFFL);
+    }
+}
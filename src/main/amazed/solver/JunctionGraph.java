@@ -0,0 +1,243 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * <code>JunctionGraph</code> is a contraction of a <code>Maze</code>
+ * into a weighted graph whose nodes are the junctions, dead ends,
+ * goals, and start node of the maze, and whose edges are the
+ * corridors between them.
+ * <p>
+ * Most accessible nodes in a maze have exactly two neighbors: they
+ * lie on a corridor, where a search has no choice but to go on. The
+ * contracted graph keeps only the other nodes &mdash; called
+ * <em>junctions</em> here, regardless of their degree &mdash; and
+ * connects two junctions with an edge whose weight is the number of
+ * steps along the corridor between them. A search on the contracted
+ * graph skips the corridors entirely; method <code>corridor</code>
+ * expands an edge back into the nodes of the maze.
+ * <p>
+ * Contraction takes time linear in the size of the maze, and the
+ * result is immutable: method <code>of</code> builds the graph of a
+ * maze once, and returns the same graph to every later caller, until
+ * a wall of the maze is opened or closed. The graph does not refer
+ * to the maze, which is garbage collected as usual; it is passed
+ * again to <code>corridor</code>.
+ * Junctions are numbered from <code>0</code>; edges are stored in
+ * compressed sparse row format, so that the edges leaving junction
+ * <code>j</code> are numbered from <code>firstEdge(j)</code> to
+ * <code>firstEdge(j + 1) - 1</code>.
+ */
+
+public class JunctionGraph
+{
+    // graphs already built, by maze; graphs must not refer to their
+    // maze, or the maze would never be collected
+    private static final Map<Maze, JunctionGraph> graphs = new WeakHashMap<>();
+
+    // revision of the maze that was contracted
+    private final int revision;
+    // maze index --> junction; -1 if not a junction
+    private final int[] junctionOf;
+    // junction --> maze index
+    private final int[] cellOf;
+    // junction --> first edge leaving it; cellOf.length --> number of edges
+    private final int[] firstEdge;
+    // edge --> maze index of the first node after the source junction
+    private final int[] firstStep;
+    // edge --> target junction
+    private final int[] target;
+    // edge --> number of steps from source to target junction
+    private final int[] weight;
+
+    /**
+     * Returns the junction graph of a maze, contracting the maze the
+     * first time this method is called on it.
+     *
+     * @param maze   a maze
+     * @return       the junction graph of <code>maze</code>
+     */
+    public static JunctionGraph of(Maze maze)
+    {
+        JunctionGraph graph;
+        synchronized (graphs) {
+            graph = graphs.get(maze);
+        }
+        if (graph == null || graph.revision != maze.revision()) {
+            // contract outside the lock, so that other mazes need not
+            // wait; concurrent callers on the same maze may both contract it
+            graph = new JunctionGraph(maze);
+            synchronized (graphs) {
+                graphs.put(maze, graph);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Contracts a maze into its junction graph.
+     *
+     * @param maze   the maze to be contracted
+     */
+    public JunctionGraph(Maze maze)
+    {
+        this.revision = maze.revision();
+        int size = maze.size();
+        int start = maze.start();
+
+        // first pass: find junctions, and count edges
+        junctionOf = new int[size];
+        Arrays.fill(junctionOf, -1);
+        int[] cells = new int[size];
+        int junctions = 0, edges = 0;
+        for (int index = 0; index < size; index++) {
+            int id = maze.idOf(index);
+            if (!maze.isAccessible(id))
+                continue;
+            int degree = maze.neighbors(id).size();
+            if (degree != 2 || id == start || maze.hasGoal(id)) {
+                junctionOf[index] = junctions;
+                cells[junctions++] = index;
+                edges += degree;
+            }
+        }
+        cellOf = Arrays.copyOf(cells, junctions);
+
+        // second pass: follow the corridor leaving every junction
+        // in every direction, until it reaches another junction
+        firstEdge = new int[junctions + 1];
+        firstStep = new int[edges];
+        target = new int[edges];
+        weight = new int[edges];
+        int edge = 0;
+        for (int junction = 0; junction < junctions; junction++) {
+            firstEdge[junction] = edge;
+            int id = maze.idOf(cellOf[junction]);
+            for (int nb: maze.neighbors(id)) {
+                int previous = id, current = nb, steps = 1;
+                while (junctionOf[maze.indexOf(current)] < 0) {
+                    int next = otherNeighbor(maze, current, previous);
+                    previous = current;
+                    current = next;
+                    steps += 1;
+                }
+                firstStep[edge] = maze.indexOf(nb);
+                target[edge] = junctionOf[maze.indexOf(current)];
+                weight[edge] = steps;
+                edge += 1;
+            }
+        }
+        firstEdge[junctions] = edge;
+    }
+
+    // the neighbor of corridor node `id' of `maze' other than `previous'
+    private static int otherNeighbor(Maze maze, int id, int previous)
+    {
+        Set<Integer> neighbors = maze.neighbors(id);
+        for (int nb: neighbors) {
+            if (nb != previous)
+                return nb;
+        }
+        // corridor node whose two neighbors coincide: impossible on a grid
+        throw new IllegalStateException("Corridor node " + id + " has a single neighbor");
+    }
+
+    /**
+     * Returns the number of junctions in the graph.
+     *
+     * @return   the number of junctions
+     */
+    public int junctions()
+    {
+        return cellOf.length;
+    }
+
+    /**
+     * Returns the junction corresponding to a node of the maze.
+     *
+     * @param index   the index of a node in the maze
+     * @return        the junction at node <code>index</code>; <code>-1</code>
+     *                if that node is not a junction
+     */
+    public int junctionOf(int index)
+    {
+        return junctionOf[index];
+    }
+
+    /**
+     * Returns the node of the maze corresponding to a junction.
+     *
+     * @param junction   a junction
+     * @return           the index of the node of the maze at <code>junction</code>
+     */
+    public int cellOf(int junction)
+    {
+        return cellOf[junction];
+    }
+
+    /**
+     * Returns the first edge leaving a junction. The edges leaving
+     * <code>junction</code> are numbered from
+     * <code>firstEdge(junction)</code> to
+     * <code>firstEdge(junction + 1) - 1</code>.
+     *
+     * @param junction   a junction, or <code>junctions()</code>
+     * @return           the first edge leaving <code>junction</code>
+     */
+    public int firstEdge(int junction)
+    {
+        return firstEdge[junction];
+    }
+
+    /**
+     * Returns the junction where an edge ends.
+     *
+     * @param edge   an edge
+     * @return       the target junction of <code>edge</code>
+     */
+    public int target(int edge)
+    {
+        return target[edge];
+    }
+
+    /**
+     * Returns the number of steps along an edge.
+     *
+     * @param edge   an edge
+     * @return       the length of the corridor of <code>edge</code>
+     */
+    public int weight(int edge)
+    {
+        return weight[edge];
+    }
+
+    /**
+     * Returns the nodes of the maze along an edge, excluding the
+     * source junction and including the target junction.
+     *
+     * @param maze   the maze contracted into this graph
+     * @param from   the source junction of <code>edge</code>
+     * @param edge   an edge leaving <code>from</code>
+     * @return       the indices of the <code>weight(edge)</code> nodes of
+     *               the maze on the corridor of <code>edge</code>, in order
+     */
+    public int[] corridor(Maze maze, int from, int edge)
+    {
+        int[] cells = new int[weight[edge]];
+        int previous = maze.idOf(cellOf[from]);
+        int current = maze.idOf(firstStep[edge]);
+        cells[0] = firstStep[edge];
+        for (int k = 1; k < cells.length; k++) {
+            int next = otherNeighbor(maze, current, previous);
+            previous = current;
+            current = next;
+            cells[k] = maze.indexOf(current);
+        }
+        return cells;
+    }
+}
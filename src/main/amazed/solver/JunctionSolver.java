@@ -0,0 +1,159 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.PathResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <code>JunctionSolver</code> implements a solver for
+ * <code>Maze</code> objects that searches the junction graph of the
+ * maze instead of the maze itself.
+ * <p>
+ * The solver runs Dijkstra's algorithm on the
+ * <code>JunctionGraph</code> of the maze, so that the corridors
+ * between junctions are traversed in a single step each, without
+ * querying the maze for neighbors or checking visited nodes along
+ * them. When a goal junction is reached, the edges of the winning
+ * path are expanded back into nodes of the maze. The path returned is
+ * a shortest path to a goal.
+ * <p>
+ * Contraction is done once per maze, and is shared by all solvers of
+ * the same maze: solving a maze repeatedly only pays for it once, as
+ * long as its walls do not change.
+ */
+
+public class JunctionSolver extends SequentialSolver
+{
+    private final JunctionGraph graph;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, using the junction graph of
+     * <code>maze</code>.
+     *
+     * @param maze   the maze to be searched
+     */
+    public JunctionSolver(Maze maze)
+    {
+        this(maze, JunctionGraph.of(maze));
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, using a given contraction of
+     * <code>maze</code>.
+     *
+     * @param maze    the maze to be searched
+     * @param graph   the junction graph of <code>maze</code>
+     */
+    public JunctionSolver(Maze maze, JunctionGraph graph)
+    {
+        super(maze);
+        this.graph = graph;
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        return junctionSearch();
+    }
+
+    private List<Integer> junctionSearch()
+    {
+        int player = maze.newPlayer(start);
+        int junctions = graph.junctions();
+        // junction --> length of the shortest path found so far
+        int[] distance = new int[junctions];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        // junction --> edge through which it is first reached
+        int[] via = new int[junctions];
+        boolean[] closed = new boolean[junctions];
+        MinHeap open = new MinHeap();
+
+        int root = graph.junctionOf(maze.indexOf(start));
+        distance[root] = 0;
+        open.add(0, entry(root, -1));
+        while (!open.isEmpty() && !isCancelled()) {
+            long entry = open.poll();
+            int current = (int) (entry >>> 32);
+            if (closed[current])
+                continue;
+            closed[current] = true;
+            via[current] = (int) entry;
+            int id = maze.idOf(graph.cellOf(current));
+            maze.move(player, id);
+            if (maze.hasGoal(id))
+                return expandPath(root, current, via);
+            for (int edge = graph.firstEdge(current); edge < graph.firstEdge(current + 1); edge++) {
+                int next = graph.target(edge);
+                int g = distance[current] + graph.weight(edge);
+                if (!closed[next] && g < distance[next]) {
+                    distance[next] = g;
+                    open.add(g, entry(next, edge));
+                }
+            }
+        }
+        // all reachable junctions explored, no goal found
+        return null;
+    }
+
+    // expands the edges from junction `root' to junction `goal'
+    private PathResult expandPath(int root, int goal, int[] via)
+    {
+        // edges in reverse order, and their source junctions
+        int[] edges = new int[graph.junctions()];
+        int[] sources = new int[graph.junctions()];
+        int count = 0, length = 1;
+        for (int current = goal; current != root; count++) {
+            int edge = via[current];
+            edges[count] = edge;
+            length += graph.weight(edge);
+            // the source of an edge is the junction whose range contains it
+            int source = sourceOf(edge);
+            sources[count] = source;
+            current = source;
+        }
+        int[] path = new int[length];
+        path[0] = graph.cellOf(root);
+        int offset = 1;
+        for (int k = count - 1; k >= 0; k--) {
+            int[] corridor = graph.corridor(maze, sources[k], edges[k]);
+            System.arraycopy(corridor, 0, path, offset, corridor.length);
+            offset += corridor.length;
+        }
+        return PathResult.of(maze, path);
+    }
+
+    // junction that edge `edge' leaves from, by binary search on the edge ranges
+    private int sourceOf(int edge)
+    {
+        int low = 0, high = graph.junctions() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (graph.firstEdge(mid) <= edge)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    // heap value: a junction together with the edge it is reached through
+    private static long entry(int junction, int edge)
+    {
+        return ((long) junction << 32) | (edge & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,93 @@
+package amazed.solver;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>MinHeap</code> is a binary min-heap of <code>long</code>
+ * values ordered by <code>long</code> keys, stored in two primitive
+ * arrays without any boxing.
+ * <p>
+ * The heap does not support changing the key of an element: informed
+ * searches simply add an element again with a smaller key, and skip
+ * the stale copy when it is eventually removed.
+ */
+
+class MinHeap
+{
+    private long[] keys;
+    private long[] values;
+    private int size = 0;
+
+    MinHeap()
+    {
+        keys = new long[64];
+        values = new long[64];
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void add(long key, long value)
+    {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2*size);
+            values = Arrays.copyOf(values, 2*size);
+        }
+        int k = size++;
+        // sift up
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (keys[parent] <= key)
+                break;
+            keys[k] = keys[parent];
+            values[k] = values[parent];
+            k = parent;
+        }
+        keys[k] = key;
+        values[k] = value;
+    }
+
+    // key of the minimum element
+    long peekKey()
+    {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return keys[0];
+    }
+
+    // removes the minimum element and returns its value
+    long poll()
+    {
+        if (size == 0)
+            throw new NoSuchElementException();
+        long result = values[0];
+        size -= 1;
+        long key = keys[size];
+        long value = values[size];
+        int k = 0;
+        // sift down
+        while (true) {
+            int child = 2*k + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && keys[child + 1] < keys[child])
+                child += 1;
+            if (key <= keys[child])
+                break;
+            keys[k] = keys[child];
+            values[k] = values[child];
+            k = child;
+        }
+        keys[k] = key;
+        values[k] = value;
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>MultiGoalSolver</code> implements a solver for
+ * <code>Maze</code> objects that finds paths to all reachable goals
+ * with a single exploration of the maze.
+ * <p>
+ * The solver runs the same level-synchronous parallel breadth-first
+ * search as <code>BreadthFirstSolver</code>, but does not stop at the
+ * first goal: it explores all nodes reachable from the start node,
+ * recording every goal on the way. Method <code>compute</code> returns
+ * a path to a nearest goal; after it terminates, method
+ * <code>paths</code> returns a shortest path to every reachable goal.
+ * <p>
+ * To only find a path to a nearest goal, use
+ * <code>BreadthFirstSolver</code>, which stops at the first level
+ * that contains a goal.
+ */
+
+public class MultiGoalSolver extends BreadthFirstSolver
+{
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to all goals.
+     *
+     * @param maze   the maze to be searched
+     */
+    public MultiGoalSolver(Maze maze)
+    {
+        super(maze, false);
+    }
+
+    /**
+     * Returns the shortest paths from the start node to all goals
+     * reachable from it, found by the last call to
+     * <code>compute</code>.
+     *
+     * @return   a map from the identifier of every reachable goal to a
+     *           shortest path, as a list of node identifiers, from the
+     *           start node to that goal; the paths are ordered by
+     *           increasing length
+     */
+    public Map<Integer, List<Integer>> paths()
+    {
+        int[] goals = reachedGoals();
+        // sort goals by distance from the start node
+        long[] byDistance = new long[goals.length];
+        for (int k = 0; k < goals.length; k++)
+            byDistance[k] = ((long) distanceOf(goals[k]) << 32) | goals[k];
+        Arrays.sort(byDistance);
+        Map<Integer, List<Integer>> paths = new LinkedHashMap<>();
+        for (long entry: byDistance) {
+            int id = maze.idOf((int) entry);
+            paths.put(id, pathFromTo(start, id));
+        }
+        return paths;
+    }
+}
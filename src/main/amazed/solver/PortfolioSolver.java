@@ -0,0 +1,157 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <code>PortfolioSolver</code> implements a solver for
+ * <code>Maze</code> objects that races several other solvers of the
+ * same maze against each other.
+ * <p>
+ * No search order wins on every maze: a depth-first search is fast
+ * when a goal lies down the first branches it tries, whereas
+ * breadth-first and informed searches are fast when it does not.
+ * The portfolio forks all its solvers in the pool that runs it, and
+ * waits until one of them returns a path that is valid according to
+ * {@link amazed.maze.Maze#isValidPath(List)}, or until all of them
+ * have failed. The first valid path is the result; then, all other
+ * solvers are cancelled, and stop at their next check of
+ * <code>isCancelled</code>, and all instances of
+ * <code>IncrementalSolver</code> are detached from the maze. Thus, the portfolio is about as fast as
+ * its fastest solver on every maze, at the cost of running all of
+ * them until then.
+ * <p>
+ * While waiting, the portfolio task is blocked through
+ * <code>ForkJoinPool.managedBlock</code>, so that the pool can
+ * compensate for it with a spare worker. The solvers only race
+ * each other if the pool has enough workers to run them all at once;
+ * otherwise, some of them only start when others have finished. The
+ * path returned is not necessarily a shortest path, unless all
+ * solvers in the portfolio return shortest paths.
+ */
+
+public class PortfolioSolver extends SequentialSolver
+{
+    private final List<RecursiveTask<List<Integer>>> solvers;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, by racing a given list of solvers.
+     *
+     * @param maze      the maze to be searched
+     * @param solvers   the solvers of <code>maze</code> to be raced; each of
+     *                  them must not have been run before
+     */
+    public PortfolioSolver(Maze maze, List<? extends RecursiveTask<List<Integer>>> solvers)
+    {
+        super(maze);
+        this.solvers = new ArrayList<>(solvers);
+    }
+
+    /**
+     * Initializes nothing: the portfolio does not search by itself,
+     * and its solvers have their own data structures.
+     */
+    @Override
+    protected void initStructures()
+    {
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze, as found by the first solver in the portfolio that
+     * returns a valid path. If no solver finds such a path, the method
+     * returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        if (solvers.isEmpty())
+            return null;
+        // released when a solver wins, or when all have finished
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<List<Integer>> winner = new AtomicReference<>();
+        AtomicInteger running = new AtomicInteger(solvers.size());
+        for (RecursiveTask<List<Integer>> solver: solvers)
+            new Entrant(solver, done, winner, running).fork();
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block()
+                    throws InterruptedException
+                {
+                    // wake up regularly to notice if the portfolio is cancelled
+                    while (!isReleasable())
+                        done.await(10, TimeUnit.MILLISECONDS);
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable()
+                {
+                    return done.getCount() == 0 || isCancelled();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (RecursiveTask<List<Integer>> solver: solvers) {
+            solver.cancel(false);
+            // no one can replan with the solvers of the portfolio:
+            // incremental solvers need not follow the maze's walls any longer
+            if (solver instanceof IncrementalSolver)
+                ((IncrementalSolver) solver).detach();
+        }
+        return winner.get();
+    }
+
+    // runs one solver of the portfolio, and reports its path if it wins
+    private class Entrant extends RecursiveAction
+    {
+        private final RecursiveTask<List<Integer>> solver;
+        private final CountDownLatch done;
+        private final AtomicReference<List<Integer>> winner;
+        private final AtomicInteger running;
+
+        Entrant(RecursiveTask<List<Integer>> solver, CountDownLatch done,
+                AtomicReference<List<Integer>> winner, AtomicInteger running)
+        {
+            this.solver = solver;
+            this.done = done;
+            this.winner = winner;
+            this.running = running;
+        }
+
+        @Override
+        protected void compute()
+        {
+            try {
+                if (done.getCount() == 0)
+                    return;
+                // a cancelled solver either never runs, or returns early
+                List<Integer> path = solver.invoke();
+                if (path != null && maze.isValidPath(path) && winner.compareAndSet(null, path))
+                    done.countDown();
+            } catch (RuntimeException e) {
+                // a failed solver just loses the race
+            } finally {
+                if (running.decrementAndGet() == 0)
+                    done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package amazed.solver;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <code>PredecessorArray</code> records, for every node visited
+ * during a search, the neighbor node from which it was first reached.
+ * <p>
+ * Nodes are identified by their index in the maze (see
+ * {@link amazed.maze.Maze#indexOf(int)}), and predecessors are stored
+ * in an array of primitive integers with one entry per node. The
+ * array can be written concurrently by the tasks of a parallel
+ * solver: the first predecessor recorded for a node wins, and later
+ * attempts to record another one fail. Thus, following predecessors
+ * backwards from any recorded node always leads to the node where the
+ * search started.
+ */
+
+public class PredecessorArray
+{
+    // node index --> 1 + index of predecessor; 0 if not recorded
+    private final AtomicIntegerArray predecessors;
+
+    /**
+     * Creates an empty array for nodes with indices in the range
+     * <code>0 .. size - 1</code>.
+     *
+     * @param size   the number of nodes in the maze
+     */
+    public PredecessorArray(int size)
+    {
+        predecessors = new AtomicIntegerArray(size);
+    }
+
+    /**
+     * Records the predecessor of a node, unless the node has a
+     * predecessor already.
+     *
+     * @param index         the index of a node in the maze
+     * @param predecessor   the index of a neighbor node from which
+     *                      <code>index</code> is reached
+     * @return              <code>true</code> if the predecessor was recorded by
+     *                      this call; <code>false</code> if <code>index</code>
+     *                      already had a predecessor
+     */
+    public boolean putIfAbsent(int index, int predecessor)
+    {
+        return predecessors.compareAndSet(index, 0, predecessor + 1);
+    }
+
+    /**
+     * Returns the predecessor of a node.
+     *
+     * @param index   the index of a node in the maze
+     * @return        the index of the predecessor of <code>index</code>;
+     *                <code>-1</code> if it has no predecessor
+     */
+    public int get(int index)
+    {
+        return predecessors.get(index) - 1;
+    }
+
+    /**
+     * Tests whether a node has a predecessor.
+     *
+     * @param index   the index of a node in the maze
+     * @return        <code>true</code> if <code>index</code> has a
+     *                predecessor; <code>false</code> otherwise
+     */
+    public boolean contains(int index)
+    {
+        return predecessors.get(index) != 0;
+    }
+
+    /**
+     * Returns the path, as an array of node indices, that goes from
+     * node <code>from</code> to node <code>to</code> following
+     * predecessors backwards. If such a path cannot be reconstructed,
+     * the method returns <code>null</code>.
+     *
+     * @param from   the index of the initial node on the path
+     * @param to     the index of the final node on the path
+     * @return       the array of node indices from <code>from</code> to
+     *               <code>to</code> if such a path can be reconstructed;
+     *               <code>null</code> otherwise
+     */
+    public int[] path(int from, int to)
+    {
+        // first pass: length of the path
+        int length = 1;
+        for (int current = to; current != from; length++) {
+            current = get(current);
+            if (current < 0)
+                return null;
+        }
+        // second pass: fill the path backwards
+        int[] path = new int[length];
+        int current = to;
+        for (int k = length - 1; k > 0; k--) {
+            path[k] = current;
+            current = get(current);
+        }
+        path[0] = from;
+        return path;
+    }
+}
@@ -1,17 +1,12 @@
 package amazed.solver;
 
 import amazed.maze.Maze;
+import amazed.maze.PathResult;
 
 import java.util.concurrent.RecursiveTask;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Stack;
-import java.util.Collections;
 
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -24,16 +19,23 @@ import java.util.concurrent.ConcurrentSkipListSet;
  * <code>RecursiveTask</code>, it is purely sequential. Method
  * <code>compute</code> returns a solution consisting of a list of
  * node identifiers in the maze that lead from the start node to a
- * goal.
+ * goal, represented compactly as a <code>PathResult</code>.
  * <p>
  * Depth-first search is implemented using a stack of
- * <code>frontier</code> nodes &mdash; giving the nodes to be explored
- * next in depth-first order. Visited nodes are added to a set
- * <code>visited</code>. For each visited node,
+ * <code>frontier</code> node indices &mdash; giving the nodes to be
+ * explored next in depth-first order. Visited nodes are added to a
+ * set <code>visited</code>. Neighbors are enumerated with
+ * <code>Maze.neighbors(int, int[])</code> into a reused array, so that
+ * the search allocates nothing per visited node, except when the
+ * stack grows. For each visited node,
  * <code>predecessor</code> keeps track of the other node adjacent to
  * the visited node that has been visited just before it. Method
  * <code>pathFromTo</code> reconstructs a path by following the
  * <code>precedessor</code> relation backwards.
+ * <p>
+ * All solvers check regularly whether their task has been cancelled
+ * with <code>cancel</code>, in which case they stop searching as soon
+ * as possible and return <code>null</code>.
  *
  * @author  Carlo A. Furia
  */
@@ -61,9 +63,10 @@ public class SequentialSolver
      */
     protected void initStructures()
     {
-        visited = new HashSet<>();
-        predecessor = new HashMap<>();
-        frontier = new Stack<>();
+        visited = new VisitedSet(maze.size());
+        predecessor = new PredecessorArray(maze.size());
+        frontier = new int[16];
+        frontierSize = 0;
     }
 
     /**
@@ -79,22 +82,26 @@ public class SequentialSolver
     protected int forkAfter = 0;
 
     /**
-     * Set of identifiers of all nodes visited so far during the
-     * search.
+     * Set of indices of all nodes visited so far during the search.
+     */
+    protected VisitedSet visited;
+    /**
+     * If the predecessor of the node with index <code>n</code> is
+     * <code>m</code> in <code>precedessor</code>, then the node with
+     * index <code>n</code> has been first reached from its neighbor
+     * node with index <code>m</code> during the search.
      */
-    protected Set<Integer> visited;
+    protected PredecessorArray predecessor;
     /**
-     * If <code>(m -&gt; n)</code> is in <code>precedessor</code>, then
-     * the node with identifier <code>n</code> has been first visited
-     * from its neighbor node with identifier <code>m</code> during
-     * the search.
+     * The indices of the nodes in the maze to be visited next, in
+     * <code>frontier[0 .. frontierSize - 1]</code>. Using a stack
+     * implements a search that goes depth first.
      */
-    protected Map<Integer, Integer> predecessor;
+    protected int[] frontier;
     /**
-     * The nodes in the maze to be visited next. Using a stack
-     * implements a search that goes depth first..
+     * The number of nodes in <code>frontier</code>.
      */
-    protected Stack<Integer> frontier;
+    protected int frontierSize;
     /**
      * The identifier of the node in the maze from where the search
      * starts.
@@ -122,12 +129,16 @@ public class SequentialSolver
     {
         // one player active on the maze at start
         int player = maze.newPlayer(start);
+        // neighbors of the current node, reused for every node
+        int[] adjacent = new int[4];
         // start with start node
-        frontier.push(start);
-        // as long as not all nodes have been processed
-        while (!frontier.empty()) {
+        push(maze.indexOf(start));
+        // as long as not all nodes have been processed,
+        // and the search has not been cancelled
+        while (frontierSize > 0 && !isCancelled()) {
             // get the new node to process
-            int current = frontier.pop();
+            int index = frontier[--frontierSize];
+            int current = maze.idOf(index);
             // if current node has a goal
             if (maze.hasGoal(current)) {
                 // move player to goal
@@ -135,20 +146,20 @@ public class SequentialSolver
                 // search finished: reconstruct and return path
                 return pathFromTo(start, current);
             }
-            // if current node has not been visited yet
-            if (!visited.contains(current)) {
+            // if current node has not been visited yet, mark it as visited
+            if (visited.tryClaim(index)) {
                 // move player to current node
                 maze.move(player, current);
-                // mark node as visited
-                visited.add(current);
                 // for every node nb adjacent to current
-                for (int nb: maze.neighbors(current)) {
+                int count = maze.neighbors(current, adjacent);
+                for (int k = 0; k < count; k++) {
+                    int nb = maze.indexOf(adjacent[k]);
                     // add nb to the nodes to be processed
-                    frontier.push(nb);
+                    push(nb);
                     // if nb has not been already visited,
                     // nb can be reached from current (i.e., current is nb's predecessor)
                     if (!visited.contains(nb))
-                        predecessor.put(nb, current);
+                        predecessor.putIfAbsent(nb, index);
                 }
             }
         }
@@ -156,30 +167,32 @@ public class SequentialSolver
         return null;
     }
 
+    // pushes node index `index' onto the frontier
+    private void push(int index)
+    {
+        if (frontierSize == frontier.length)
+            frontier = Arrays.copyOf(frontier, 2*frontierSize);
+        frontier[frontierSize++] = index;
+    }
+
     /**
-     * Returns the connected path, as a list of node identifiers, that
-     * goes from node <code>from</code> to node <code>to</code>
-     * following the inverse of relation <code>predecessor</code>. If
-     * such a path cannot be reconstructed from
-     * <code>predecessor</code>, the method returns <code>null</code>.
+     * Returns the connected path, as a compact list of node
+     * identifiers, that goes from node <code>from</code> to node
+     * <code>to</code> following the inverse of relation
+     * <code>predecessor</code>. If such a path cannot be reconstructed
+     * from <code>predecessor</code>, the method returns
+     * <code>null</code>.
      *
      * @param from   the identifier of the initial node on the path
      * @param to     the identifier of the final node on the path
-     * @return       the list of node identifiers from <code>from</code> to
-     *               <code>to</code> if such a path can be reconstructed from
-     *               <code>predecessor</code>; <code>null</code> otherwise
+     * @return       the path from <code>from</code> to <code>to</code> if
+     *               it can be reconstructed from <code>predecessor</code>;
+     *               <code>null</code> otherwise
      */
-    protected List<Integer> pathFromTo(int from, int to) {
-        List<Integer> path = new LinkedList<>();
-        Integer current = to;
-        while (current != from) {
-            path.add(current);
-            current = predecessor.get(current);
-            if (current == null)
-                return null;
-        }
-        path.add(from);
-        Collections.reverse(path);
-        return path;
+    protected PathResult pathFromTo(int from, int to) {
+        int[] indices = predecessor.path(maze.indexOf(from), maze.indexOf(to));
+        if (indices == null)
+            return null;
+        return PathResult.of(maze, indices);
     }
 }
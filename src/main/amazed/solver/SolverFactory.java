@@ -0,0 +1,57 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>SolverFactory</code> is the service interface through which
+ * solvers are made available to <code>Amazed</code> and to the
+ * command line.
+ * <p>
+ * Every factory has a unique name, and creates solvers configured by
+ * a map of named parameters, as given on the command line in the
+ * form <code>name:key=value,key=value</code> (see
+ * <code>SolverSpec</code>). Factories are discovered with
+ * <code>java.util.ServiceLoader</code>: a factory is registered by
+ * listing its fully qualified class name in a file
+ * <code>META-INF/services/amazed.solver.SolverFactory</code> on the
+ * class path, and must have a public constructor without arguments.
+ * The built-in factories are in <code>BuiltinSolvers</code>.
+ * <p>
+ * Parameter <code>threads</code> is reserved: <code>Amazed</code>
+ * uses it to choose the parallelism of the pool that runs the solver.
+ */
+
+public interface SolverFactory
+{
+    /**
+     * Returns the name under which the solvers created by this factory
+     * can be selected.
+     *
+     * @return   the name of this factory
+     */
+    String name();
+
+    /**
+     * Returns a one-line description of the solvers created by this
+     * factory, and of the parameters they accept.
+     *
+     * @return   a description of this factory
+     */
+    String description();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze         the maze to be searched
+     * @param parameters   the parameters of the solver, by name
+     * @return             a new solver of <code>maze</code>
+     * @throws IllegalArgumentException   if a parameter is unknown to this
+     *                                    factory, or has an invalid value
+     */
+    RecursiveTask<List<Integer>> create(Maze maze, Map<String, String> parameters);
+}
@@ -0,0 +1,157 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>SolverSpec</code> selects a solver by the name of its factory,
+ * together with its parameters.
+ * <p>
+ * The textual form of a specification is
+ * <code>name[:key=value[,key=value]...]</code>, for example
+ * <code>astar</code> or <code>bfs:threads=8</code>. The form
+ * <code>parallel-N</code> is still accepted, and stands for
+ * <code>parallel:forkAfter=N</code>. Method <code>create</code>
+ * looks up the factory among those registered with
+ * <code>ServiceLoader</code> (see <code>SolverFactory</code>).
+ */
+
+public final class SolverSpec
+{
+    // factories found by ServiceLoader, by name; loaded on first use
+    private static Map<String, SolverFactory> factories;
+
+    private final String name;
+    private final Map<String, String> parameters;
+
+    private SolverSpec(String name, Map<String, String> parameters)
+    {
+        this.name = name;
+        this.parameters = Collections.unmodifiableMap(parameters);
+    }
+
+    /**
+     * Parses the textual form of a specification.
+     *
+     * @param spec   a specification, such as <code>bfs:threads=8</code>
+     * @return       the specification denoted by <code>spec</code>
+     * @throws IllegalArgumentException   if <code>spec</code> is malformed
+     */
+    public static SolverSpec parse(String spec)
+    {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (spec.matches("parallel-\\d+")) {
+            parameters.put("forkAfter", spec.substring("parallel-".length()));
+            return new SolverSpec("parallel", parameters);
+        }
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        if (name.isEmpty())
+            throw new IllegalArgumentException("Missing solver name in '" + spec + "'");
+        if (colon >= 0) {
+            for (String parameter: spec.substring(colon + 1).split(",")) {
+                int equals = parameter.indexOf('=');
+                if (equals <= 0)
+                    throw new IllegalArgumentException("Malformed parameter '" + parameter + "' in '" + spec + "'");
+                parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+            }
+        }
+        return new SolverSpec(name, parameters);
+    }
+
+    /**
+     * Returns the name of the factory of the solver.
+     *
+     * @return   the name of the solver
+     */
+    public String name()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the parameters of the solver.
+     *
+     * @return   an unmodifiable map of the parameters, by name, in the
+     *           order they were given
+     */
+    public Map<String, String> parameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * Returns the number of threads requested with parameter
+     * <code>threads</code>.
+     *
+     * @return   the value of parameter <code>threads</code>; <code>0</code>
+     *           if it is not given
+     * @throws IllegalArgumentException   if the value is not a positive integer
+     */
+    public int threads()
+    {
+        String threads = parameters.get("threads");
+        if (threads == null)
+            return 0;
+        try {
+            int value = Integer.parseInt(threads);
+            if (value > 0)
+                return value;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Parameter threads must be a positive integer: " + threads);
+    }
+
+    /**
+     * Creates a solver of a maze as specified.
+     *
+     * @param maze   the maze to be searched
+     * @return       a new solver of <code>maze</code>
+     * @throws IllegalArgumentException   if no factory has the name of this
+     *                                    specification, or the factory
+     *                                    rejects its parameters
+     */
+    public RecursiveTask<List<Integer>> create(Maze maze)
+    {
+        SolverFactory factory = factories().get(name);
+        if (factory == null)
+            throw new IllegalArgumentException("Unknown solver '" + name + "'");
+        return factory.create(maze, parameters);
+    }
+
+    /**
+     * Returns all factories registered with <code>ServiceLoader</code>.
+     *
+     * @return   an unmodifiable map of the factories, by name, sorted by name
+     */
+    public static synchronized Map<String, SolverFactory> factories()
+    {
+        if (factories == null) {
+            Map<String, SolverFactory> loaded = new TreeMap<>();
+            for (SolverFactory factory: ServiceLoader.load(SolverFactory.class))
+                loaded.putIfAbsent(factory.name(), factory);
+            factories = Collections.unmodifiableMap(loaded);
+        }
+        return factories;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder result = new StringBuilder(name);
+        char separator = ':';
+        for (Map.Entry<String, String> parameter: parameters.entrySet()) {
+            result.append(separator).append(parameter.getKey()).append('=').append(parameter.getValue());
+            separator = ',';
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>VirtualThreadSolver</code> implements a solver for
+ * <code>Maze</code> objects using a multi-thread depth-first search
+ * where every branch of the search runs on a thread of its own.
+ * <p>
+ * Whenever a branch reaches a node with more than one unvisited
+ * neighbor, it continues towards one of them, and forks a new branch
+ * for each of the others, each with its own animated player. Nodes
+ * are claimed in a shared <code>VisitedSet</code>, so that every node
+ * is expanded by exactly one branch. All branches run inside a
+ * <code>BranchScope</code>: the first branch that finds a goal shuts
+ * the scope down, which cancels all the other branches, and method
+ * <code>compute</code> returns once all branches have terminated.
+ * <p>
+ * Branches run on virtual threads when the Java runtime supports
+ * them. Since the pauses of an animated maze are spent blocked in
+ * <code>Maze.move</code>, this lets thousands of animated branches
+ * progress at once, without blocking the workers of a
+ * <code>ForkJoinPool</code>. On runtimes without virtual threads,
+ * branches run on platform threads, and a branch that cannot fork
+ * because there are too many live threads explores its other
+ * neighbors itself.
+ */
+
+public class VirtualThreadSolver extends SequentialSolver
+{
+    // no goal found yet
+    private static final int NO_GOAL = -1;
+
+    // index of the goal found by any branch; NO_GOAL if none
+    private AtomicInteger goal;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public VirtualThreadSolver(Maze maze)
+    {
+        super(maze);
+    }
+
+    /**
+     * Initializes <code>predecessor</code> only: <code>visited</code>
+     * is created anew by every search, and every branch keeps its own
+     * stack instead of <code>frontier</code>.
+     */
+    @Override
+    protected void initStructures()
+    {
+        predecessor = new PredecessorArray(maze.size());
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int root = maze.indexOf(start);
+        visited = new VisitedSet(maze.size());
+        visited.tryClaim(root);
+        goal = new AtomicInteger(NO_GOAL);
+        try (BranchScope scope = new BranchScope()) {
+            if (!scope.fork(() -> branch(scope, root)))
+                branch(scope, root);
+            scope.join();
+            if (scope.failure() != null)
+                throw new IllegalStateException("Search branch failed", scope.failure());
+        } catch (InterruptedException e) {
+            // the scope cancels all branches when closed
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        int found = goal.get();
+        if (found == NO_GOAL)
+            return null;
+        return pathFromTo(start, maze.idOf(found));
+    }
+
+    // depth-first search from node `from', until the branch runs out
+    // of nodes or the scope is shut down
+    private void branch(BranchScope scope, int from)
+    {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = from;
+        int player = maze.newPlayer(maze.idOf(from));
+        boolean first = true;
+        while (top > 0 && !scope.isShutdown() && !isCancelled()) {
+            int current = stack[--top];
+            int id = maze.idOf(current);
+            if (!first)
+                maze.move(player, id);
+            first = false;
+
+            if (maze.hasGoal(id)) {
+                if (goal.compareAndSet(NO_GOAL, current))
+                    scope.shutdown();
+                return;
+            }
+
+            // continue towards the first claimed neighbor,
+            // and fork a branch towards each of the others
+            int next = -1;
+            for (int neighbor: maze.neighbors(id)) {
+                int index = maze.indexOf(neighbor);
+                if (!visited.tryClaim(index))
+                    continue;
+                predecessor.putIfAbsent(index, current);
+                if (next < 0)
+                    next = index;
+                else if (!scope.fork(() -> branch(scope, index))) {
+                    if (top == stack.length)
+                        stack = Arrays.copyOf(stack, 2*top);
+                    stack[top++] = index;
+                }
+            }
+            if (next >= 0) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, 2*top);
+                stack[top++] = next;
+            }
+        }
+    }
+}
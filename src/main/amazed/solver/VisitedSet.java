@@ -0,0 +1,82 @@
+package amazed.solver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>VisitedSet</code> is a lock-free set of visited nodes, which
+ * can be shared by the tasks of a parallel solver.
+ * <p>
+ * Nodes are identified by their index in the maze (see
+ * {@link amazed.maze.Maze#indexOf(int)}), and the set is stored as a
+ * bitset with one bit per node. Method <code>tryClaim</code> adds a
+ * node to the set with a single atomic operation, and succeeds for
+ * exactly one caller per node: a solver that only expands the nodes
+ * it has successfully claimed expands every node exactly once.
+ * <p>
+ * The set also counts the claims that failed because the node was
+ * already in the set, as a measure of the contention among tasks.
+ */
+
+public class VisitedSet
+{
+    private final AtomicLongArray words;
+    private final LongAdder duplicateClaims = new LongAdder();
+
+    /**
+     * Creates an empty set for nodes with indices in the range
+     * <code>0 .. size - 1</code>.
+     *
+     * @param size   the number of nodes in the maze
+     */
+    public VisitedSet(int size)
+    {
+        words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /**
+     * Adds a node to the set, if it is not in the set already.
+     *
+     * @param index   the index of a node in the maze
+     * @return        <code>true</code> if the node was added by this call;
+     *                <code>false</code> if it was already in the set
+     */
+    public boolean tryClaim(int index)
+    {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long old = words.get(word);
+        while ((old & bit) == 0) {
+            long witness = words.compareAndExchange(word, old, old | bit);
+            if (witness == old)
+                return true;
+            // another bit in the same word changed: retry
+            old = witness;
+        }
+        duplicateClaims.increment();
+        return false;
+    }
+
+    /**
+     * Tests whether a node is in the set.
+     *
+     * @param index   the index of a node in the maze
+     * @return        <code>true</code> if the node has been claimed;
+     *                <code>false</code> otherwise
+     */
+    public boolean contains(int index)
+    {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the number of calls to <code>tryClaim</code> that failed
+     * so far because the node was already in the set.
+     *
+     * @return   the number of duplicate claim attempts
+     */
+    public long duplicateClaims()
+    {
+        return duplicateClaims.sum();
+    }
+}